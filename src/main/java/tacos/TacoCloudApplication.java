@@ -1,17 +1,35 @@
 package tacos;
 
+import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
 import org.jasypt.iv.RandomIvGenerator;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.matchers.KeyMatcher;
+import org.quartz.listeners.JobListenerSupport;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import tacos.model.JobRecord;
+import tacos.util.Job;
+import tacos.util.StartupTimeline;
+import tacos.util.Util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @SpringBootApplication
@@ -22,7 +40,84 @@ public class TacoCloudApplication {
             runGenerate();
             return;
         }
-        SpringApplication.run(TacoCloudApplication.class, args);
+        StartupTimeline.mark(StartupTimeline.PHASE_MAIN);
+        SpringApplication application = new SpringApplication(TacoCloudApplication.class);
+        BufferingApplicationStartup startup = new BufferingApplicationStartup(4096);
+        application.setApplicationStartup(startup);
+        ConfigurableApplicationContext context = application.run(args);
+        StartupTimeline.mark(StartupTimeline.PHASE_CONTEXT);
+        logSlowestSteps(startup, 10);
+
+        // native 冒烟测试 (见 pom.xml 的 native profile)，触发一次定时任务，按任务结果退出
+        String smokeJob = System.getProperty("startup.smokeJob");
+        if (StringUtils.hasText(smokeJob)) {
+            int code = runSmokeJob(context, smokeJob);
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+
+        // 生成 AppCDS 归档时 (见 pom.xml 的 appcds profile)，启动完成即退出，JVM 退出时写入归档
+        if (Boolean.getBoolean("startup.exitAfterStartup")) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * 输出启动中最慢的步骤，例如 Bean 实例化、配置类解析
+     */
+    private static void logSlowestSteps(BufferingApplicationStartup startup, int limit) {
+        StringBuilder sb = new StringBuilder("启动最慢的步骤");
+        startup.getBufferedTimeline().getEvents().stream()
+                .sorted((a, b) -> b.getDuration().compareTo(a.getDuration()))
+                .limit(limit)
+                .forEach(event -> {
+                    sb.append(System.lineSeparator()).append(event.getDuration().toMillis()).append(" ms ")
+                            .append(event.getStartupStep().getName());
+                    event.getStartupStep().getTags().forEach(tag -> sb.append(' ').append(tag.getKey()).append('=').append(tag.getValue()));
+                });
+        log.info(sb.toString());
+    }
+
+    /**
+     * 经过 Quartz 触发一次 {@link Job}，走完整的调度、分发、执行和结果记录，用于冒烟测试 (例如 native 可执行文件)
+     *
+     * @param context Spring 容器
+     * @param cd      模板功能代码，逗号分隔
+     * @return 进程退出码，0 成功，1 任务跳过、没有分发或者有运行出错，2 无法执行或超时
+     */
+    private static int runSmokeJob(ConfigurableApplicationContext context, String cd) {
+        long timeout = Util.strToInt(System.getProperty("startup.smokeTimeout", "300000"), 300000);
+        try {
+            Scheduler scheduler = context.getBean(Scheduler.class);
+            JobDetail job = JobBuilder.newJob(Job.class).withIdentity("smoke", "system").usingJobData("cd", cd).build();
+            CompletableFuture<Object> done = new CompletableFuture<>();
+            scheduler.getListenerManager().addJobListener(new JobListenerSupport() {
+                @Override
+                public String getName() {
+                    return "smoke";
+                }
+
+                @Override
+                public void jobWasExecuted(JobExecutionContext jobContext, JobExecutionException e) {
+                    done.complete(jobContext.getResult());
+                }
+            }, KeyMatcher.keyEquals(job.getKey()));
+            scheduler.scheduleJob(job, TriggerBuilder.newTrigger().withIdentity("smoke", "system").startNow().build());
+
+            Object result = done.get(timeout, TimeUnit.MILLISECONDS);
+            log.info("冒烟任务结果: {}", new Gson().toJson(result));
+            if (!(result instanceof JobRecord)) {
+                return 2;
+            }
+            JobRecord record = (JobRecord) result;
+            return record.isSkipped() || record.getDispatched() == 0 || record.getFailed() > 0 ? 1 : 0;
+        } catch (TimeoutException e) {
+            log.error("冒烟任务 {} ms 内没有结束", timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("冒烟任务无法运行: {}", e.getMessage());
+        }
+        return 2;
     }
 
     private static void runGenerate() {
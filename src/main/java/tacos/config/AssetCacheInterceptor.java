@@ -0,0 +1,56 @@
+package tacos.config;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 带内容指纹的静态资源 (例如 /css/style-0f3c...e1.css，由 spring.web.resources.chain.strategy.content 生成) 内容不会变化，
+ * 返回一年有效的 immutable 缓存头和强 ETag，浏览器刷新时不再重新验证。<br/>
+ * ETag 由指纹和实际返回的预压缩编码组成，与 Spring 的 EncodedResourceResolver 选择 .br/.gz 的规则一致
+ */
+public class AssetCacheInterceptor implements HandlerInterceptor {
+    private static final Pattern VERSIONED = Pattern.compile("^(.+)-([0-9a-f]{32})(\\.[^./]+)$");
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String[][] CODINGS = {{"br", ".br"}, {"gzip", ".gz"}};
+
+    private final Map<String, Boolean> exists = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher matcher = VERSIONED.matcher(path);
+        if (!matcher.matches()) {
+            return true;
+        }
+
+        String original = matcher.group(1) + matcher.group(3);
+        String etag = "\"" + matcher.group(2) + suffix(original, request.getHeader("Accept-Encoding")) + "\"";
+        response.setHeader("Cache-Control", CACHE_CONTROL);
+        response.setHeader("ETag", etag);
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+        return true;
+    }
+
+    private String suffix(String path, String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return "";
+        }
+        for (String[] coding : CODINGS) {
+            if (acceptEncoding.contains(coding[0])
+                    && exists.computeIfAbsent(path + coding[1], p -> new ClassPathResource("static" + p).exists())) {
+                return "-" + coding[0];
+            }
+        }
+        return "";
+    }
+}
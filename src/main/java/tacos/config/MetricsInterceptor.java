@@ -0,0 +1,37 @@
+package tacos.config;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import tacos.util.Metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 统计 HTTP 请求耗时和错误，uri 使用映射的路径模板，避免路径参数产生大量标签
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+    private static final String ATTR_START = MetricsInterceptor.class.getName() + ".start";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(ATTR_START, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(ATTR_START);
+        if (!(start instanceof Long)) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNMATCHED" : pattern.toString();
+        String outcome = ex == null ? "ok" : "error";
+        Metrics.timer("ete_http_requests_seconds", "method", request.getMethod(), "uri", uri, "outcome", outcome)
+                .record(System.nanoTime() - (Long) start);
+        if (ex != null) {
+            Metrics.counter("ete_http_errors_total", "uri", uri, "kind", ex.getClass().getSimpleName()).inc();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package tacos.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.quartz.Scheduler;
 import org.quartz.spi.JobFactory;
 import org.quartz.spi.TriggerFiredBundle;
@@ -8,8 +9,20 @@ import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.scheduling.quartz.AdaptableJobFactory;
 import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import tacos.util.NodeAffinityListener;
+
+import javax.sql.DataSource;
+
+import static tacos.util.Util.getProperty;
+import static tacos.util.Util.strToBoolean;
+import static tacos.util.Util.strToInt;
 
 // https://cloud.tencent.com/developer/article/1947192
 
@@ -20,13 +33,21 @@ import org.springframework.scheduling.quartz.SchedulerFactoryBean;
  * <li>定时间隔和时间点</li>
  * <li>要检查和的页面地址和API清单</li>
  * </ul>
+ * 设置 quartz.cluster.enabled=true 后使用数据库 JobStore 集群运行，多个节点分担任务，节点宕机后由其他节点恢复执行，
+ * 详见 quartz-cluster.properties
  */
+@Slf4j
 @Configuration
 public class QuartzConfig {
+    private static final String CLUSTER_PROPERTIES = "/quartz-cluster.properties";
+    private static final String CLUSTER_SCHEMA = "org/quartz/impl/jdbcjobstore/tables_mysql_innodb.sql";
+
     @Autowired
     private JobFactory jobFactory;
     @Autowired
     private AutowireCapableBeanFactory capableBeanFactory;
+    @Autowired
+    private DataSource dataSource;
 
     /**
      * 当触发器触发时，与之关联的任务被Scheduler中配置的JobFactory实例化，也就是每触发一次，就会创建一个任务的实例化对象
@@ -59,6 +80,15 @@ public class QuartzConfig {
         factory.setJobFactory(jobFactory);
         //这句一定要加！！！！不然properties配置不生效！！！！
         factory.setConfigLocation(new ClassPathResource("/quartz.properties"));
+        if (strToBoolean(getProperty("quartz.cluster.enabled", "false"))) {
+            initClusterSchema();
+            factory.setDataSource(dataSource);
+            factory.setQuartzProperties(PropertiesLoaderUtils.loadProperties(new ClassPathResource(CLUSTER_PROPERTIES)));
+            log.info("Quartz 集群模式启动");
+        }
+        factory.setGlobalTriggerListeners(new NodeAffinityListener(
+                getProperty("quartz.node.pools", ""),
+                strToInt(getProperty("quartz.node.maxHops", "3"), 3)));
         factory.setStartupDelay(1);
         factory.afterPropertiesSet();
         // 设置自定义Job Factory，用于Spring管理Job bean
@@ -70,5 +100,18 @@ public class QuartzConfig {
         return schedulerFactoryBean().getScheduler();
     }
 
+    /**
+     * 集群模式下，若数据库中没有 QRTZ_ 表，使用 Quartz 自带的 MySQL 脚本创建
+     */
+    private void initClusterSchema() {
+        try {
+            new JdbcTemplate(dataSource).queryForMap("select count(1) from QRTZ_LOCKS");
+        } catch (DataAccessException e) {
+            log.warn("Quartz 集群表不存在，开始创建: " + e.getMessage());
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource(CLUSTER_SCHEMA));
+            populator.setCommentPrefixes("#", "--");
+            DatabasePopulatorUtils.execute(populator, dataSource);
+        }
+    }
 
 }
\ No newline at end of file
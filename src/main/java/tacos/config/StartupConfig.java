@@ -0,0 +1,77 @@
+package tacos.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.Scheduler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import tacos.util.BrowserPool;
+import tacos.util.ProbeEngine;
+import tacos.util.ScheduleLoader;
+import tacos.util.SqlHelper;
+import tacos.util.StartupTimeline;
+
+import static tacos.util.Util.getProperty;
+import static tacos.util.Util.strToInt;
+
+/**
+ * 启动配置
+ * <p>
+ * 使用 fast profile (spring.profiles.active=fast，见 application-fast.properties) 时 Bean 延迟到第一次使用时创建，
+ * 但定时任务相关的 Bean 仍在启动时创建，否则 Quartz 不会启动，也就没有测量；ProbeEngine 在创建时启动定时探测，同样需要提前创建；SqlHelper 的静态方法不经过 Spring 获取，
+ * 同样不能延迟。<br/>
+ * 可以提供服务后，在后台预热 startup.warmup 个浏览器，不阻塞启动，第一次运行不必等待浏览器启动
+ */
+@Slf4j
+@Configuration
+public class StartupConfig {
+    private final ObjectProvider<BrowserPool> pool;
+
+    public StartupConfig(ObjectProvider<BrowserPool> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 延迟初始化时仍需在启动时创建的 Bean
+     *
+     * @return LazyInitializationExcludeFilter
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerBeans() {
+        return LazyInitializationExcludeFilter.forBeanTypes(
+                SchedulerFactoryBean.class, Scheduler.class, ScheduleLoader.class, SqlHelper.class, ProbeEngine.class);
+    }
+
+    /**
+     * 可以提供服务后预热浏览器
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        StartupTimeline.mark(StartupTimeline.PHASE_READY);
+        log.info(StartupTimeline.report());
+
+        int count = strToInt(getProperty("startup.warmup", "0"), 0);
+        if (count <= 0) {
+            return;
+        }
+        long delay = strToInt(getProperty("startup.warmupDelay", "0"), 0);
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(delay);
+                int warmed = pool.getObject().warmUp(count);
+                StartupTimeline.mark(StartupTimeline.PHASE_WARMUP);
+                log.info("浏览器预热完成: {}/{}", warmed, count);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("浏览器预热失败: " + e.getMessage());
+            }
+        }, "browser-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -1,14 +1,42 @@
 package tacos.config;
 
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.servlet.ServletContextInitializer;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
+import javax.servlet.Servlet;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 视图配置
+ * <p>
+ * jsp/* 视图转发到 /WEB-INF/jsp/*.jsp。prod 或 jspc profile 打包时 JspC 预编译全部 JSP (见 pom.xml)，生成的 Servlet 映射写入
+ * classpath 下的 {@link #PRECOMPILED_MAPPINGS}，启动时按 JSP 路径精确注册并立即初始化，转发时优先于 *.jsp 的 Jasper，
+ * 第一次请求不再编译。没有映射文件时 (未启用 jspc 或在 IDE 中运行) 仍由 Jasper 在第一次请求时编译
+ */
+@Slf4j
 @Configuration
+@Profile("!agent")
 public class ViewResolverConfiguration extends WebMvcConfigurerAdapter {
+    static final String PRECOMPILED_MAPPINGS = "jsp-servlets.xml";
 
     @Bean
     public InternalResourceViewResolver viewResolver() {
@@ -21,6 +49,82 @@ public class ViewResolverConfiguration extends WebMvcConfigurerAdapter {
         return viewResolver;
     }
 
+    /**
+     * 注册预编译的 JSP Servlet
+     *
+     * @return ServletContextInitializer
+     */
+    @Bean
+    public ServletContextInitializer precompiledJsp() {
+        return servletContext -> {
+            Map<String, String> mappings;
+            try (InputStream in = getClass().getClassLoader().getResourceAsStream(PRECOMPILED_MAPPINGS)) {
+                if (in == null) {
+                    log.info("没有预编译的 JSP，由 Jasper 在第一次请求时编译");
+                    return;
+                }
+                mappings = loadMappings(in);
+            } catch (Exception e) {
+                log.warn("读取预编译 JSP 映射出错: " + e.getMessage());
+                return;
+            }
+
+            for (Map.Entry<String, String> entry : mappings.entrySet()) {
+                try {
+                    Servlet servlet = (Servlet) Class.forName(entry.getValue()).getDeclaredConstructor().newInstance();
+                    ServletRegistrationBean<Servlet> registration = new ServletRegistrationBean<>(servlet, entry.getKey());
+                    registration.setName(entry.getValue());
+                    registration.setLoadOnStartup(1);
+                    registration.onStartup(servletContext);
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    log.warn("预编译的 JSP {} 无法加载: {}", entry.getKey(), e.getMessage());
+                }
+            }
+            log.info("已注册预编译的 JSP: {}", mappings.keySet());
+        };
+    }
+
+    /**
+     * 读取 JspC -webinc 生成的 web.xml 片段
+     *
+     * @param in 片段内容，只有 servlet 和 servlet-mapping 元素，没有根元素
+     * @return JSP 路径 -> Servlet 类名
+     */
+    static Map<String, String> loadMappings(InputStream in) throws Exception {
+        String fragment = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader("<web-app>" + fragment + "</web-app>")));
+
+        Map<String, String> classes = new HashMap<>();
+        NodeList servlets = document.getElementsByTagName("servlet");
+        for (int i = 0; i < servlets.getLength(); i++) {
+            Element servlet = (Element) servlets.item(i);
+            classes.put(text(servlet, "servlet-name"), text(servlet, "servlet-class"));
+        }
+
+        Map<String, String> mappings = new LinkedHashMap<>();
+        NodeList items = document.getElementsByTagName("servlet-mapping");
+        for (int i = 0; i < items.getLength(); i++) {
+            Element mapping = (Element) items.item(i);
+            String className = classes.get(text(mapping, "servlet-name"));
+            if (className != null) {
+                mappings.put(text(mapping, "url-pattern"), className);
+            }
+        }
+        return mappings;
+    }
+
+    private static String text(Element parent, String tag) {
+        NodeList nodes = parent.getElementsByTagName(tag);
+        return nodes.getLength() == 0 ? "" : nodes.item(0).getTextContent().trim();
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new MetricsInterceptor());
+        registry.addInterceptor(new AssetCacheInterceptor());
+    }
+
 //    @Override
 //    public void addResourceHandlers(ResourceHandlerRegistry registry) {
 //        registry.addResourceHandler("/**")
@@ -1,5 +1,6 @@
 package tacos.controller;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -8,6 +9,7 @@ import org.springframework.web.bind.annotation.GetMapping;
  * Spring Boot中支持jsp功能的实现
  */
 @Controller
+@Profile("!agent")
 public class JspController {
 
     @GetMapping("/index")
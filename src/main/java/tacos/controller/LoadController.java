@@ -0,0 +1,96 @@
+package tacos.controller;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import tacos.model.LoadPlan;
+import tacos.model.LoadReport;
+import tacos.util.LoadRunner;
+import tacos.util.Util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static tacos.util.Util.strToInt;
+
+/**
+ * 负载测试接口
+ * <ul>
+ * <li>POST /load/{cd}?users=100&amp;rampUp=ms&amp;steady=ms&amp;pacing=ms&amp;thinkTime=ms&amp;@NO=...: 开始负载测试，
+ * 其余请求参数作为占位符参数，立即返回 202 和实时报告；计划不合法返回 400，模板不存在返回 404，已有测试在运行时返回 409</li>
+ * <li>GET /load: 实时报告 (百分位、出错率、吞吐量)，结束后为最终报告</li>
+ * <li>DELETE /load: 提前结束</li>
+ * <li>GET /load/capacity: 主机能同时运行的用户数量</li>
+ * </ul>
+ */
+@Controller
+@RequestMapping("/load")
+public class LoadController {
+    private static final Gson GSON = new GsonBuilder().setDateFormat(Util.FORMAT_DATETIME).create();
+
+    @Autowired
+    private LoadRunner runner;
+
+    @ResponseBody
+    @PostMapping("/{cd}")
+    public ResponseEntity<String> start(@PathVariable String cd, @RequestParam Map<String, String> params) {
+        Map<String, String> placeholders = new HashMap<>(params);
+        LoadPlan plan = new LoadPlan();
+        plan.setCd(cd);
+        plan.setUsers(strToInt(placeholders.remove("users"), 1));
+        plan.setRampUp(strToInt(placeholders.remove("rampUp"), 0));
+        plan.setSteady(strToInt(placeholders.remove("steady"), 60000));
+        plan.setPacing(strToInt(placeholders.remove("pacing"), 0));
+        plan.setThinkTime(strToInt(placeholders.remove("thinkTime"), 0));
+        plan.setParams(placeholders);
+        // 计划不合法返回 400，LoadRunner 抛出的 IllegalArgumentException 只剩模板不存在
+        if (plan.getUsers() < 1) {
+            return json(HttpStatus.BAD_REQUEST, error("users should be at least 1"));
+        }
+        if (plan.getRampUp() < 0 || plan.getSteady() < 0 || plan.getPacing() < 0 || plan.getThinkTime() < 0) {
+            return json(HttpStatus.BAD_REQUEST, error("rampUp, steady, pacing and thinkTime should not be negative"));
+        }
+        try {
+            runner.start(plan);
+        } catch (IllegalArgumentException e) {
+            return json(HttpStatus.NOT_FOUND, error(e.getMessage()));
+        } catch (IllegalStateException e) {
+            return json(HttpStatus.CONFLICT, error(e.getMessage()));
+        }
+        return json(HttpStatus.ACCEPTED, runner.getReport());
+    }
+
+    @ResponseBody
+    @GetMapping
+    public ResponseEntity<String> report() {
+        LoadReport report = runner.getReport();
+        return report == null ? json(HttpStatus.NOT_FOUND, error("no load test")) : json(HttpStatus.OK, report);
+    }
+
+    @ResponseBody
+    @DeleteMapping
+    public ResponseEntity<String> stop() {
+        LoadReport report = runner.stop();
+        return report == null ? json(HttpStatus.NOT_FOUND, error("no load test")) : json(HttpStatus.OK, report);
+    }
+
+    @ResponseBody
+    @GetMapping("/capacity")
+    public ResponseEntity<String> capacity() {
+        return json(HttpStatus.OK, Collections.singletonMap("capacity", LoadRunner.capacity()));
+    }
+
+    private static Map<String, String> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private static ResponseEntity<String> json(HttpStatus status, Object body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(GSON.toJson(body));
+    }
+}
@@ -0,0 +1,19 @@
+package tacos.controller;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import tacos.util.Metrics;
+
+/**
+ * Prometheus 抓取入口
+ */
+@Controller
+public class MetricsController {
+
+    @ResponseBody
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String metrics() {
+        return Metrics.scrape();
+    }
+}
@@ -0,0 +1,63 @@
+package tacos.controller;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import tacos.model.Probe;
+import tacos.util.ProbeEngine;
+import tacos.util.Util;
+
+import java.util.Collections;
+
+import static tacos.util.Util.isEmpty;
+
+/**
+ * HTTP 探测接口
+ * <ul>
+ * <li>GET /probes: 各探测最近一次的结果</li>
+ * <li>POST /probes/check: 请求体为探测定义 (JSON)，立即执行一次并返回结果，不占用请求线程</li>
+ * </ul>
+ */
+@Controller
+@RequestMapping("/probes")
+public class ProbeController {
+    private static final Gson GSON = new GsonBuilder().setDateFormat(Util.FORMAT_DATETIME).create();
+
+    @Autowired
+    private ProbeEngine engine;
+
+    @ResponseBody
+    @GetMapping
+    public ResponseEntity<String> latest() {
+        return json(HttpStatus.OK, engine.getLatest());
+    }
+
+    @ResponseBody
+    @PostMapping("/check")
+    public DeferredResult<ResponseEntity<String>> check(@RequestBody String body) {
+        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>();
+        Probe probe;
+        try {
+            probe = GSON.fromJson(body, Probe.class);
+        } catch (JsonParseException e) {
+            probe = null;
+        }
+        if (probe == null || isEmpty(probe.getUrl())) {
+            deferred.setResult(json(HttpStatus.BAD_REQUEST, Collections.singletonMap("error", "probe with url required")));
+            return deferred;
+        }
+        engine.probe(probe).thenAccept(result -> deferred.setResult(json(HttpStatus.OK, result)));
+        return deferred;
+    }
+
+    private static ResponseEntity<String> json(HttpStatus status, Object body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(GSON.toJson(body));
+    }
+}
@@ -0,0 +1,187 @@
+package tacos.controller;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import tacos.model.AdhocRun;
+import tacos.model.MatrixResult;
+import tacos.util.AdhocRunner;
+import tacos.util.NetworkMatrix;
+import tacos.util.ProjectUtil;
+import tacos.util.ResourceBlocker;
+import tacos.util.Util;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static tacos.util.Util.getProperty;
+import static tacos.util.Util.strToInt;
+
+/**
+ * 即时运行接口
+ * <ul>
+ * <li>POST /runs/{cd}?@NO=...&amp;maxAge=ms: 提交运行，请求参数作为占位符参数，立即返回 202 和运行 ID；排队已满返回 429。
+ * 相同的运行未结束时共用该运行，maxAge (默认 adhoc.freshness) 内结束的相同运行直接返回</li>
+ * <li>GET /runs/stats: 排队数量和合并节省的运行数量</li>
+ * <li>POST /runs/{cd}/matrix?profiles=LAN,4G&amp;@NO=...: 在多个网络条件下并行运行 (默认 network.profiles)，
+ * 等待全部结束后返回各网络条件的结果和对比报告，见 {@link NetworkMatrix}；每个网络条件计为一个即时运行，排队已满返回 429，运行异常结束返回 500</li>
+ * <li>GET /runs/matrix: 各模板最近一次的网络条件矩阵结果</li>
+ * <li>GET /runs/blocking: 资源拦截 A/B 报告，见 {@link ResourceBlocker#report()}</li>
+ * <li>GET /runs/{id}: 当前状态，不等待</li>
+ * <li>GET /runs/{id}/result?timeout=ms: 等待运行结束，不占用请求线程，timeout 限制在 1 ms 到 adhoc.maxWait 之间；超时返回 202 和当前状态，
+ * 运行异常结束返回 500</li>
+ * </ul>
+ */
+@Controller
+@RequestMapping("/runs")
+public class RunController {
+    private static final String PARAM_MAX_AGE = "maxAge";
+    private static final String PARAM_PROFILES = "profiles";
+    private static final Gson GSON = new GsonBuilder().setDateFormat(Util.FORMAT_DATETIME).create();
+
+    @Autowired
+    private AdhocRunner runner;
+    @Autowired
+    private NetworkMatrix matrix;
+
+    @ResponseBody
+    @PostMapping("/{cd}")
+    public ResponseEntity<String> submit(@PathVariable String cd, @RequestParam Map<String, String> params) {
+        Map<String, String> placeholders = new HashMap<>(params);
+        long maxAge = strToInt(placeholders.remove(PARAM_MAX_AGE), strToInt(getProperty("adhoc.freshness", "0"), 0));
+        AdhocRunner.Submission submission;
+        try {
+            submission = runner.submit(cd, placeholders, maxAge);
+        } catch (IllegalArgumentException e) {
+            return json(HttpStatus.NOT_FOUND, error(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(e);
+        }
+
+        AdhocRun run = submission.getRun();
+        URI status = ServletUriComponentsBuilder.fromCurrentContextPath().path("/runs/{id}").buildAndExpand(run.getId()).toUri();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", run.getId());
+        body.put("status", run.getStatus());
+        body.put("mode", submission.getMode());
+        body.put("statusUrl", status.toString());
+        body.put("resultUrl", status + "/result");
+        return ResponseEntity.accepted().location(status).contentType(MediaType.APPLICATION_JSON).body(GSON.toJson(body));
+    }
+
+    @ResponseBody
+    @PostMapping("/{cd}/matrix")
+    public DeferredResult<ResponseEntity<String>> matrix(@PathVariable String cd, @RequestParam Map<String, String> params) {
+        Map<String, String> placeholders = new HashMap<>(params);
+        String profiles = placeholders.remove(PARAM_PROFILES);
+        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>((long) strToInt(getProperty("adhoc.maxWait", "60000"), 60000));
+        List<String> names = profiles == null ? NetworkMatrix.getProfileNames() : Arrays.asList(Util.split(profiles, ","));
+        CompletableFuture<MatrixResult> done;
+        try {
+            // 每个网络条件计为一个即时运行，与 POST /runs/{cd} 共用排队上限
+            done = runner.admit(names.size(), () -> matrix.submit(cd, names, placeholders, ProjectUtil.SOURCE_ADHOC));
+        } catch (IllegalArgumentException e) {
+            deferred.setResult(json(HttpStatus.NOT_FOUND, error(e.getMessage())));
+            return deferred;
+        } catch (RejectedExecutionException e) {
+            deferred.setResult(tooManyRequests(e));
+            return deferred;
+        }
+        deferred.onTimeout(() -> deferred.setResult(json(HttpStatus.ACCEPTED, error("matrix still running, see GET /runs/matrix"))));
+        complete(deferred, done);
+        return deferred;
+    }
+
+    @ResponseBody
+    @GetMapping("/matrix")
+    public ResponseEntity<String> latestMatrix() {
+        return json(HttpStatus.OK, matrix.getLatest());
+    }
+
+    @ResponseBody
+    @GetMapping("/stats")
+    public ResponseEntity<String> stats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("outstanding", runner.getOutstanding());
+        body.put("maxQueue", runner.getMaxQueue());
+        body.put("coalesced", runner.getCoalesced());
+        body.put("reused", runner.getReused());
+        return json(HttpStatus.OK, body);
+    }
+
+    @ResponseBody
+    @GetMapping("/blocking")
+    public ResponseEntity<String> blocking() {
+        return json(HttpStatus.OK, ResourceBlocker.report());
+    }
+
+    @ResponseBody
+    @GetMapping("/{id}")
+    public ResponseEntity<String> status(@PathVariable String id) {
+        AdhocRun run = runner.get(id);
+        return run == null ? json(HttpStatus.NOT_FOUND, error("run not found: " + id)) : json(HttpStatus.OK, run);
+    }
+
+    @ResponseBody
+    @GetMapping("/{id}/result")
+    public DeferredResult<ResponseEntity<String>> result(@PathVariable String id,
+                                                         @RequestParam(required = false) String timeout) {
+        long max = strToInt(getProperty("adhoc.maxWait", "60000"), 60000);
+        // 0 或负数在容器中表示永不超时
+        long wait = Math.max(1, Math.min(max, strToInt(timeout, (int) max)));
+        DeferredResult<ResponseEntity<String>> deferred = new DeferredResult<>(wait);
+        CompletableFuture<AdhocRun> done = runner.await(id);
+        if (done == null) {
+            deferred.setResult(json(HttpStatus.NOT_FOUND, error("run not found: " + id)));
+            return deferred;
+        }
+        deferred.onTimeout(() -> deferred.setResult(json(HttpStatus.ACCEPTED, runner.get(id))));
+        complete(deferred, done);
+        return deferred;
+    }
+
+    /**
+     * 结束时返回 200 和结果，出错时返回 500 和错误信息，而不是等到超时返回 202
+     */
+    private static void complete(DeferredResult<ResponseEntity<String>> deferred, CompletableFuture<?> done) {
+        done.whenComplete((result, e) -> {
+            if (e == null) {
+                deferred.setResult(json(HttpStatus.OK, result));
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                deferred.setResult(json(HttpStatus.INTERNAL_SERVER_ERROR, error(String.valueOf(cause))));
+            }
+        });
+    }
+
+    private static Map<String, String> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private static ResponseEntity<String> tooManyRequests(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, getProperty("adhoc.retryAfter", "30"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(GSON.toJson(error(e.getMessage())));
+    }
+
+    private static ResponseEntity<String> json(HttpStatus status, Object body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(GSON.toJson(body));
+    }
+}
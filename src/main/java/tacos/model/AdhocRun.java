@@ -0,0 +1,45 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 即时运行记录
+ */
+@Data
+public class AdhocRun {
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_DONE = "done";
+    public static final String STATUS_FAILED = "failed";
+
+    /**
+     * 运行 ID
+     */
+    private String id;
+
+    /**
+     * 模板功能代码
+     */
+    private String cd;
+
+    /**
+     * 状态: pending 排队或正在运行，done 成功，failed 出错
+     */
+    private volatile String status = STATUS_PENDING;
+
+    /**
+     * 提交时间
+     */
+    private Date submitted;
+
+    /**
+     * 结束时间
+     */
+    private Date finished;
+
+    /**
+     * 运行结果，结束后才有
+     */
+    private ScriptResult result;
+}
@@ -0,0 +1,36 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 资源拦截配置，见 {@link tacos.util.ResourceBlocker}
+ */
+@Data
+public class BlockProfile {
+    /**
+     * 配置名称，none 表示不拦截
+     */
+    private String name;
+
+    /**
+     * 拦截的 URL，* 为通配符，例如 *google-analytics.com*
+     */
+    private List<String> urls = new ArrayList<>();
+
+    /**
+     * 拦截的资源类型: Image, Font, Media, Stylesheet, Script
+     */
+    private List<String> types = new ArrayList<>();
+
+    /**
+     * 拦截脚本后用空函数代替的全局函数，例如 ga, gtag，页面调用时不会报错
+     */
+    private List<String> stubs = new ArrayList<>();
+
+    public boolean isEmpty() {
+        return urls.isEmpty() && types.isEmpty() && stubs.isEmpty();
+    }
+}
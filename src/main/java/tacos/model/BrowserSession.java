@@ -0,0 +1,39 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 浏览器登录会话，登录成功后保存，用于恢复到其他浏览器
+ */
+@Data
+public class BrowserSession {
+    /**
+     * 登录后所在页面，恢复时先打开该页面，使 Cookie 和 Storage 属于同一个站点
+     */
+    private String url;
+
+    /**
+     * Cookie，每个包含 name, value, domain, path, expiry (ms), secure, httpOnly, sameSite
+     */
+    private List<Map<String, Object>> cookies = new ArrayList<>();
+
+    /**
+     * localStorage 内容
+     */
+    private Map<String, String> localStorage = new HashMap<>();
+
+    /**
+     * sessionStorage 内容
+     */
+    private Map<String, String> sessionStorage = new HashMap<>();
+
+    /**
+     * 过期时刻，单位 ms
+     */
+    private long expireAt;
+}
@@ -0,0 +1,51 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 定时任务执行记录
+ */
+@Data
+public class JobRecord {
+    /**
+     * 计划触发时间
+     */
+    private Date scheduledFireTime;
+
+    /**
+     * 实际触发时间
+     */
+    private Date fireTime;
+
+    /**
+     * 排队延迟，实际触发时间 - 计划触发时间，单位 ms
+     */
+    private long queueDelay;
+
+    /**
+     * 任务耗时，从触发到所有运行结束或等待超时，单位 ms
+     */
+    private long duration;
+
+    /**
+     * 分发的运行数量
+     */
+    private int dispatched;
+
+    /**
+     * 等待结束时出错的运行数量，包括返回错误信息的模板运行和异常结束的运行
+     */
+    private int failed;
+
+    /**
+     * 因上一周期仍在运行而合并跳过的模板数量
+     */
+    private int coalesced;
+
+    /**
+     * 整个周期因触发过晚而跳过
+     */
+    private boolean skipped;
+}
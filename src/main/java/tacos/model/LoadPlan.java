@@ -0,0 +1,47 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 负载测试计划，见 {@link tacos.util.LoadRunner}
+ */
+@Data
+public class LoadPlan {
+    /**
+     * 模板功能代码
+     */
+    private String cd;
+
+    /**
+     * 虚拟用户数量，超过主机容量时按容量运行
+     */
+    private int users;
+
+    /**
+     * 爬坡时间，用户在这段时间内均匀启动，单位 ms
+     */
+    private long rampUp;
+
+    /**
+     * 全部用户启动后的稳定运行时间，单位 ms
+     */
+    private long steady;
+
+    /**
+     * 每个用户两次迭代开始的最小间隔，单位 ms，0 为不限制
+     */
+    private long pacing;
+
+    /**
+     * 步骤之间的思考时间，不计入测量值，单位 ms
+     */
+    private long thinkTime;
+
+    /**
+     * 占位符参数
+     */
+    private Map<String, String> params = new HashMap<>();
+}
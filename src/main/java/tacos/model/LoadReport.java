@@ -0,0 +1,78 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 负载测试报告，运行中为实时数据，结束后为最终报告
+ */
+@Data
+public class LoadReport {
+    /**
+     * 测试 ID
+     */
+    private String id;
+
+    /**
+     * 状态: running, done, stopped
+     */
+    private String status;
+
+    /**
+     * 测试计划
+     */
+    private LoadPlan plan;
+
+    /**
+     * 实际运行的虚拟用户数量，受主机容量限制
+     */
+    private int users;
+
+    /**
+     * 开始时间
+     */
+    private Date start;
+
+    /**
+     * 结束时间，运行中为空
+     */
+    private Date end;
+
+    /**
+     * 当前活动的用户数量
+     */
+    private int activeUsers;
+
+    /**
+     * 完成的迭代次数
+     */
+    private long iterations;
+
+    /**
+     * 出错的迭代次数，包括浏览器启动失败
+     */
+    private long errors;
+
+    /**
+     * 出错比例
+     */
+    private double errorRate;
+
+    /**
+     * 每分钟完成的迭代次数
+     */
+    private double throughput;
+
+    /**
+     * 迭代耗时的百分位，p50, p90, p99，单位 s
+     */
+    private Map<String, Double> duration = new LinkedHashMap<>();
+
+    /**
+     * 各测量值的百分位，measure_time_1 -&gt; p50, p90, p99
+     */
+    private Map<String, Map<String, Double>> measures = new LinkedHashMap<>();
+}
@@ -0,0 +1,36 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.*;
+
+/**
+ * 网络条件矩阵运行结果
+ */
+@Data
+public class MatrixResult {
+    /**
+     * 模板功能代码
+     */
+    private String cd;
+
+    /**
+     * 提交时间
+     */
+    private Date submitted;
+
+    /**
+     * 全部网络条件结束的时间
+     */
+    private Date finished;
+
+    /**
+     * 各网络条件的运行结果，按配置顺序
+     */
+    private Map<String, ScriptResult> results = new LinkedHashMap<>();
+
+    /**
+     * 对比报告，每个网络条件一行，见 {@link tacos.util.NetworkMatrix}
+     */
+    private List<Map<String, Object>> comparison = new ArrayList<>();
+}
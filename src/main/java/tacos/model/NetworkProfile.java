@@ -0,0 +1,29 @@
+package tacos.model;
+
+import lombok.Data;
+
+/**
+ * 网络条件，通过 chromedriver 的 setNetworkConditions 模拟
+ */
+@Data
+public class NetworkProfile {
+    /**
+     * 名称，例如 LAN, 4G, 3G-degraded
+     */
+    private String name;
+
+    /**
+     * 附加延迟，单位 ms
+     */
+    private int latency;
+
+    /**
+     * 下行带宽，单位 byte/s，-1 为不限
+     */
+    private int download = -1;
+
+    /**
+     * 上行带宽，单位 byte/s，-1 为不限
+     */
+    private int upload = -1;
+}
@@ -0,0 +1,67 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP 探测定义，见 {@link tacos.util.ProbeEngine}
+ */
+@Data
+public class Probe {
+    /**
+     * 名称，指标和结果按名称区分
+     */
+    private String name;
+
+    /**
+     * 地址
+     */
+    private String url;
+
+    /**
+     * 请求方法，默认 GET
+     */
+    private String method = "GET";
+
+    /**
+     * 请求头
+     */
+    private Map<String, String> headers = new HashMap<>();
+
+    /**
+     * 请求体，按 Content-Type 请求头发送，默认 application/json
+     */
+    private String body;
+
+    /**
+     * 探测间隔，单位 ms，0 使用 probe.interval
+     */
+    private long interval;
+
+    /**
+     * 整个请求的超时，单位 ms，0 使用 probe.timeout
+     */
+    private long timeout;
+
+    /**
+     * 期望的状态码，0 表示 2xx 和 3xx
+     */
+    private int expectStatus;
+
+    /**
+     * 响应体应包含的文本
+     */
+    private String expectContains;
+
+    /**
+     * 响应头应包含的内容，格式为 名称: 值
+     */
+    private String expectHeader;
+
+    /**
+     * 总耗时上限，单位 ms，0 为不检查
+     */
+    private long maxDuration;
+}
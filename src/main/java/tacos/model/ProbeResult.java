@@ -0,0 +1,55 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * HTTP 探测结果，各阶段耗时单位 ms，复用连接时 dns、connect、tls 为 0
+ */
+@Data
+public class ProbeResult {
+    private String name;
+    private String url;
+    private Date start;
+
+    /**
+     * 请求成功且全部断言通过
+     */
+    private boolean ok;
+    private int status;
+
+    /**
+     * 协议，例如 h2, http/1.1
+     */
+    private String protocol;
+
+    /**
+     * 是否复用了连接池中的连接
+     */
+    private boolean reused;
+    private double dns;
+    private double connect;
+    private double tls;
+
+    /**
+     * 从发送请求到收到响应头 (time to first byte)
+     */
+    private double ttfb;
+
+    /**
+     * 读取响应体
+     */
+    private double download;
+    private double total;
+
+    /**
+     * 响应体传输的字节数 (压缩时为压缩后的大小)
+     */
+    private long bytes;
+
+    /**
+     * 失败原因，成功时为空
+     */
+    private String error = "";
+}
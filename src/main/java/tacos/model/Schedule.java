@@ -0,0 +1,49 @@
+package tacos.model;
+
+import lombok.Data;
+
+/**
+ * 数据库中的定时计划，对应 ete_schedule 表
+ */
+@Data
+public class Schedule {
+    /**
+     * 计划名称，唯一，作为 Quartz 的 Job 和 Trigger 名称
+     */
+    private String name;
+
+    /**
+     * cron 表达式，例如 0 0 * * * ?
+     */
+    private String cron;
+
+    /**
+     * 模板功能代码，逗号分隔，为空表示全部模板
+     */
+    private String cd;
+
+    /**
+     * 占位符参数，JSON 对象或对象数组，为空时使用默认参数
+     */
+    private String params;
+
+    /**
+     * 参数数据集，例如 csv:/data/patient.csv、jsonl:/data/patient.jsonl、sql:select no from patient，优先于 params
+     */
+    private String dataset;
+
+    /**
+     * 触发优先级，数值越大越优先
+     */
+    private int priority = 5;
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = true;
+
+    /**
+     * 版本号，每次修改递增
+     */
+    private long version;
+}
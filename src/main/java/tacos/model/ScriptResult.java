@@ -57,6 +57,21 @@ public class ScriptResult {
      */
     public Float measure_time_3;
 
+    /**
+     * 使用的网络条件: none 不限速，default 为 network.throttling 的全局配置，其他为 network.profile.名称，error 表示设置失败
+     */
+    public String networkProfile = "none";
+
+    /**
+     * 使用的资源拦截配置，none 表示不拦截，error 表示设置失败
+     */
+    public String blockProfile = "none";
+
+    /**
+     * 缓存模式: mixed 不处理，cold 运行前清除缓存，warm 预热后运行；不同模式的测量值分开统计
+     */
+    public String cacheMode = "mixed";
+
     /**
      * 错误信息，如果执行出问题，可以查看错误信息
      */
@@ -0,0 +1,50 @@
+package tacos.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 套件运行结果
+ */
+@Data
+public class SuiteResult {
+    /**
+     * 套件名称
+     */
+    private String suite;
+
+    /**
+     * 开始运行时间，不含排队
+     */
+    private Date start;
+
+    /**
+     * 结束时间
+     */
+    private Date end;
+
+    /**
+     * 各模板的运行结果，按运行顺序
+     */
+    private Map<String, ScriptResult> results = new LinkedHashMap<>();
+
+    /**
+     * 提前结束后未运行的模板
+     */
+    private List<String> skipped = new ArrayList<>();
+
+    /**
+     * 导致提前结束的模板，全部运行时为空
+     */
+    private String stoppedBy;
+
+    /**
+     * 错误信息，每个出错的模板一行
+     */
+    private String errorMessage = "";
+}
@@ -0,0 +1,265 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tacos.model.AdhocRun;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static tacos.util.Util.*;
+
+/**
+ * 即时运行 - Ad-hoc runs
+ * <p>
+ * 提交后立即返回运行 ID，由 {@link RunDispatcher} 排队执行，调用方不等待浏览器。<br/>
+ * 未结束的即时运行最多 adhoc.maxQueue 个，超过时拒绝 (HTTP 429)，避免浏览器饱和时队列无限增长、排到的结果早已无用。<br/>
+ * 结束的运行保留 adhoc.retention ms 供查询。其他即时提交 (例如网络条件矩阵) 通过 {@link #admit(int, Supplier)} 共用同一上限
+ * <p>
+ * 模板和参数相同的提交合并：已有未结束的运行时共用该运行 (single-flight)；指定新鲜期时，期内成功结束的运行直接返回结果，不再运行。
+ * 节省的运行数量见 {@link #getCoalesced()}、{@link #getReused()} 和指标 ete_adhoc_saved_total
+ */
+@Slf4j
+@Component
+public class AdhocRunner {
+    private final RunDispatcher dispatcher;
+    private final ProjectUtil projectUtil;
+    private final Map<String, Entry> runs = new ConcurrentHashMap<>();
+    private final Map<String, Entry> inFlight = new HashMap<>();
+    private final Map<String, Entry> latest = new HashMap<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Metrics.Counter coalesced = Metrics.counter("ete_adhoc_saved_total", "reason", Submission.COALESCED);
+    private final Metrics.Counter reused = Metrics.counter("ete_adhoc_saved_total", "reason", Submission.REUSED);
+    private final int maxQueue;
+    private final long retention;
+
+    /**
+     * 运行记录和结束通知
+     */
+    private static final class Entry {
+        final AdhocRun run;
+        final CompletableFuture<AdhocRun> done = new CompletableFuture<>();
+
+        Entry(AdhocRun run) {
+            this.run = run;
+        }
+    }
+
+    /**
+     * 一次提交的结果
+     */
+    public static final class Submission {
+        /**
+         * 新建运行
+         */
+        public static final String CREATED = "created";
+        /**
+         * 共用未结束的相同运行
+         */
+        public static final String COALESCED = "coalesced";
+        /**
+         * 返回新鲜期内的结果
+         */
+        public static final String REUSED = "reused";
+
+        private final AdhocRun run;
+        private final String mode;
+
+        Submission(AdhocRun run, String mode) {
+            this.run = run;
+            this.mode = mode;
+        }
+
+        public AdhocRun getRun() {
+            return run;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+    }
+
+    @Autowired
+    public AdhocRunner(RunDispatcher dispatcher, ProjectUtil projectUtil) {
+        this.dispatcher = dispatcher;
+        this.projectUtil = projectUtil;
+        this.maxQueue = Math.max(1, strToInt(getProperty("adhoc.maxQueue", "10"), 10));
+        this.retention = strToInt(getProperty("adhoc.retention", String.valueOf(MS_HOUR)), (int) MS_HOUR);
+        Metrics.gauge("ete_adhoc_outstanding", outstanding::get);
+    }
+
+    /**
+     * 提交一次即时运行，立即返回
+     *
+     * @param cd     模板功能代码
+     * @param params 占位符参数
+     * @param maxAge 新鲜期，单位 ms，期内结束的相同运行直接返回，0 表示不复用已结束的运行
+     * @return 提交结果
+     * @throws IllegalArgumentException   模板不存在
+     * @throws RejectedExecutionException 未结束的即时运行已达上限
+     */
+    public Submission submit(String cd, Map<String, String> params, long maxAge) {
+        String template = projectUtil.getTemplate(cd);
+        if (template == null) {
+            throw new IllegalArgumentException("template not found: " + cd);
+        }
+        purge();
+
+        String key = key(cd, params);
+        Entry entry;
+        synchronized (this) {
+            Entry last = latest.get(key);
+            if (maxAge > 0 && last != null && System.currentTimeMillis() - last.run.getFinished().getTime() <= maxAge) {
+                reused.inc();
+                return new Submission(last.run, Submission.REUSED);
+            }
+            Entry current = inFlight.get(key);
+            if (current != null) {
+                coalesced.inc();
+                return new Submission(current.run, Submission.COALESCED);
+            }
+            if (outstanding.incrementAndGet() > maxQueue) {
+                outstanding.decrementAndGet();
+                Metrics.counter("ete_adhoc_rejected_total").inc();
+                throw new RejectedExecutionException("too many ad-hoc runs in queue, limit " + maxQueue);
+            }
+
+            AdhocRun run = new AdhocRun();
+            run.setId(UUID.randomUUID().toString().replace("-", ""));
+            run.setCd(cd);
+            run.setSubmitted(now());
+            entry = new Entry(run);
+            runs.put(run.getId(), entry);
+            inFlight.put(key, entry);
+        }
+        Metrics.counter("ete_adhoc_submitted_total").inc();
+
+        AdhocRun run = entry.run;
+        dispatcher.submit(cd, template, params, ProjectUtil.SOURCE_ADHOC).whenComplete((result, e) -> {
+            outstanding.decrementAndGet();
+            run.setFinished(now());
+            run.setResult(result);
+            boolean failed = e != null || result == null || !isEmpty(result.errorMessage);
+            if (e != null) {
+                log.error("即时运行 {} 出错: {}", run.getId(), e.getMessage());
+            }
+            run.setStatus(failed ? AdhocRun.STATUS_FAILED : AdhocRun.STATUS_DONE);
+            synchronized (this) {
+                inFlight.remove(key, entry);
+                // 只复用成功的结果，出错 (包括没有空闲浏览器) 的运行下次重新执行
+                if (!failed) {
+                    latest.put(key, entry);
+                }
+            }
+            entry.done.complete(run);
+        });
+        return new Submission(run, Submission.CREATED);
+    }
+
+    /**
+     * 按即时运行的上限接纳一组运行，例如网络条件矩阵的每个网络条件计为一个运行，全部结束后释放
+     *
+     * @param runs   运行数量
+     * @param submit 提交运行，返回全部结束时完成的 future
+     * @param <T>    结果类型
+     * @return submit 返回的 future
+     * @throws RejectedExecutionException 加上本组运行后超过上限
+     */
+    public <T> CompletableFuture<T> admit(int runs, Supplier<CompletableFuture<T>> submit) {
+        int count = Math.max(1, runs);
+        synchronized (this) {
+            if (outstanding.get() + count > maxQueue) {
+                Metrics.counter("ete_adhoc_rejected_total").inc();
+                throw new RejectedExecutionException("too many ad-hoc runs in queue, limit " + maxQueue);
+            }
+            outstanding.addAndGet(count);
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = submit.get();
+        } catch (RuntimeException e) {
+            outstanding.addAndGet(-count);
+            throw e;
+        }
+        Metrics.counter("ete_adhoc_submitted_total").add(count);
+        future.whenComplete((result, e) -> outstanding.addAndGet(-count));
+        return future;
+    }
+
+    /**
+     * 合并的键，模板和按名称排序的参数
+     */
+    static String key(String cd, Map<String, String> params) {
+        return cd + '\n' + (params == null ? "{}" : new TreeMap<>(params).toString());
+    }
+
+    /**
+     * 查询运行的当前状态，不等待
+     *
+     * @param id 运行 ID
+     * @return 运行记录，ID 不存在或已过期返回 null
+     */
+    public AdhocRun get(String id) {
+        Entry entry = runs.get(id);
+        return entry == null ? null : entry.run;
+    }
+
+    /**
+     * 运行结束的通知
+     *
+     * @param id 运行 ID
+     * @return 运行结束时完成，ID 不存在或已过期返回 null
+     */
+    public CompletableFuture<AdhocRun> await(String id) {
+        Entry entry = runs.get(id);
+        return entry == null ? null : entry.done;
+    }
+
+    /**
+     * @return 未结束的即时运行数量
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return 未结束的即时运行上限
+     */
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    /**
+     * @return 共用未结束运行而节省的运行数量
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return 返回新鲜期内结果而节省的运行数量
+     */
+    public long getReused() {
+        return reused.get();
+    }
+
+    /**
+     * 删除超过保留时间的已结束运行
+     */
+    private void purge() {
+        long expire = System.currentTimeMillis() - retention;
+        runs.values().removeIf(entry -> entry.done.isDone() && entry.run.getFinished().getTime() < expire);
+        synchronized (this) {
+            latest.values().removeIf(entry -> entry.run.getFinished().getTime() < expire);
+        }
+    }
+}
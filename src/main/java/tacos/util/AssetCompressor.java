@@ -0,0 +1,144 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态资源预压缩 - Static asset precompressor
+ * <p>
+ * 打包时执行 (见 pom.xml 的 assets 执行)，为文本类静态资源生成 .gz，安装了 brotli 命令时同时生成 .br，
+ * 压缩后不更小的不生成。运行时由 spring.web.resources.chain.compressed 按 Accept-Encoding 直接返回压缩文件，不再实时压缩
+ * <pre>{@code
+ * java tacos.util.AssetCompressor target/classes/static
+ * }</pre>
+ */
+@Slf4j
+public class AssetCompressor {
+    private static final Set<String> TYPES = Set.of("css", "js", "html", "svg", "json", "txt", "xml", "map");
+    private static Boolean brotliAvailable;
+
+    private AssetCompressor() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (String dir : args) {
+            int count = compress(Paths.get(dir));
+            log.info("{} 预压缩完成: {} 个文件", dir, count);
+        }
+    }
+
+    /**
+     * 压缩目录下全部文本类资源
+     *
+     * @param dir 静态资源目录
+     * @return 生成的压缩文件数量
+     */
+    public static int compress(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            files = stream.filter(Files::isRegularFile).filter(AssetCompressor::isCompressible).collect(Collectors.toList());
+        }
+        int count = 0;
+        for (Path file : files) {
+            if (gzip(file)) {
+                count++;
+            }
+            if (brotli(file)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static boolean isCompressible(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && TYPES.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    /**
+     * 生成 .gz，使用最高压缩级别
+     *
+     * @param file 源文件
+     * @return 生成返回 true，压缩后不更小时返回 false
+     */
+    static boolean gzip(Path file) throws IOException {
+        Path target = file.resolveSibling(file.getFileName() + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(target)) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            Files.copy(file, out);
+        }
+        return keepIfSmaller(file, target);
+    }
+
+    /**
+     * 使用 brotli 命令生成 .br，没有安装时跳过
+     *
+     * @param file 源文件
+     * @return 生成返回 true
+     */
+    static boolean brotli(Path file) throws IOException {
+        if (!isBrotliAvailable()) {
+            return false;
+        }
+        Path target = file.resolveSibling(file.getFileName() + ".br");
+        try {
+            Process process = new ProcessBuilder("brotli", "-f", "-q", "11", "-o", target.toString(), file.toString())
+                    .redirectErrorStream(true).start();
+            if (!process.waitFor(1, TimeUnit.MINUTES) || process.exitValue() != 0) {
+                process.destroyForcibly();
+                log.warn("brotli 压缩 {} 失败", file);
+                Files.deleteIfExists(target);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return keepIfSmaller(file, target);
+    }
+
+    private static boolean keepIfSmaller(Path source, Path target) throws IOException {
+        if (Files.size(target) < Files.size(source)) {
+            return true;
+        }
+        Files.delete(target);
+        return false;
+    }
+
+    private static synchronized boolean isBrotliAvailable() {
+        if (brotliAvailable == null) {
+            try {
+                Process process = new ProcessBuilder("brotli", "--version").redirectErrorStream(true).start();
+                brotliAvailable = process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0;
+            } catch (IOException e) {
+                brotliAvailable = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                brotliAvailable = false;
+            }
+            if (!brotliAvailable) {
+                log.info("没有安装 brotli 命令，只生成 .gz");
+            }
+        }
+        return brotliAvailable;
+    }
+}
@@ -0,0 +1,187 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static tacos.util.Util.getProperty;
+import static tacos.util.Util.strToInt;
+
+/**
+ * 浏览器池 - Browser pool
+ * <p>
+ * 按需启动 Chrome，最多 browser.pool.size 个，用完归还后复用，避免每次运行都重新启动浏览器，使用示例 <br/>
+ * Lazily launches up to browser.pool.size Chrome instances and reuses them between runs, usage:
+ * <pre>{@code
+ * ScriptExecutor executor = pool.lease(5000);
+ * try {
+ *     executor.execute(steps, "D01", true);
+ * } finally {
+ *     pool.release(executor, true);
+ * }
+ * }</pre>
+ */
+@Slf4j
+@Component
+public class BrowserPool {
+    private static final Metrics.Timer LEASE_WAIT = Metrics.timer("ete_browser_lease_wait_seconds");
+
+    private final int size;
+    private final Semaphore permits;
+    private final BlockingDeque<ScriptExecutor> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private final Supplier<ScriptExecutor> factory;
+
+    public BrowserPool() {
+        this(strToInt(getProperty("browser.pool.size", "2"), 2), ScriptExecutor::getInstance);
+    }
+
+    /**
+     * @param size    最大浏览器数量
+     * @param factory 浏览器创建方法，失败返回 null
+     */
+    public BrowserPool(int size, Supplier<ScriptExecutor> factory) {
+        this(size, factory, new String[0]);
+    }
+
+    /**
+     * 独立的浏览器池，例如负载测试，指标用标签与默认池区分
+     *
+     * @param size    最大浏览器数量
+     * @param factory 浏览器创建方法，失败返回 null
+     * @param labels  指标标签名和值交替，例如 "pool", "load"
+     */
+    public BrowserPool(int size, Supplier<ScriptExecutor> factory, String... labels) {
+        this.size = Math.max(1, size);
+        this.permits = new Semaphore(this.size, true);
+        this.factory = factory;
+        Metrics.gauge("ete_browser_pool_size", this::getSize, labels);
+        Metrics.gauge("ete_browser_pool_created", this::getCreated, labels);
+        Metrics.gauge("ete_browser_pool_active", this::getActive, labels);
+        Metrics.gauge("ete_browser_pool_idle", this::getIdle, labels);
+        Metrics.gauge("ete_browser_pool_waiting", this::getWaiting, labels);
+    }
+
+    /**
+     * 租用一个浏览器，优先复用空闲的，没有则新建，用完必须调用 {@link #release(ScriptExecutor, boolean)} 归还
+     *
+     * @param timeout 等待空闲浏览器的超时，单位 ms
+     * @return 浏览器执行器，超时或者启动失败返回 null
+     * @throws InterruptedException 等待被中断
+     */
+    public ScriptExecutor lease(long timeout) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean acquired = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        LEASE_WAIT.record(System.nanoTime() - start);
+        if (!acquired) {
+            Metrics.counter("ete_browser_lease_timeouts_total").inc();
+            return null;
+        }
+
+        ScriptExecutor executor = idle.pollFirst();
+        if (executor != null) {
+            return executor;
+        }
+
+        executor = factory.get();
+        if (executor == null) {
+            permits.release();
+            return null;
+        }
+        created.incrementAndGet();
+        return executor;
+    }
+
+    /**
+     * 归还浏览器
+     *
+     * @param executor 租用的浏览器
+     * @param healthy  浏览器是否正常，不正常时关闭，下次租用时重新创建
+     */
+    public void release(ScriptExecutor executor, boolean healthy) {
+        if (executor == null) {
+            return;
+        }
+        if (healthy) {
+            idle.offerFirst(executor);
+        } else {
+            created.decrementAndGet();
+            executor.quit();
+        }
+        permits.release();
+    }
+
+    /**
+     * 预先启动浏览器放入空闲队列，已启动的计入数量，不超过最大数量，正在使用的浏览器不受影响
+     *
+     * @param count 期望启动的浏览器数量
+     * @return 空闲的浏览器数量
+     */
+    public int warmUp(int count) {
+        int target = Math.min(count, size);
+        while (created.get() < target && permits.tryAcquire()) {
+            ScriptExecutor executor = factory.get();
+            if (executor == null) {
+                permits.release();
+                break;
+            }
+            created.incrementAndGet();
+            release(executor, true);
+        }
+        return idle.size();
+    }
+
+    /**
+     * @return 最大浏览器数量
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return 已启动的浏览器数量
+     */
+    public int getCreated() {
+        return created.get();
+    }
+
+    /**
+     * @return 正在使用的浏览器数量
+     */
+    public int getActive() {
+        return size - permits.availablePermits();
+    }
+
+    /**
+     * @return 空闲的浏览器数量
+     */
+    public int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * @return 等待租用浏览器的线程数量
+     */
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * 关闭所有空闲浏览器
+     */
+    @PreDestroy
+    public void close() {
+        ScriptExecutor executor;
+        while ((executor = idle.pollFirst()) != null) {
+            created.decrementAndGet();
+            executor.quit();
+        }
+    }
+}
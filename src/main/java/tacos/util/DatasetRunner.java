@@ -0,0 +1,262 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tacos.util.Util.*;
+
+/**
+ * 数据驱动运行 - Dataset runner
+ * <p>
+ * 从 {@link DatasetSource} 逐行读取参数，绑定到模板后交给 {@link RunDispatcher}，同时未完成的行数不超过 dataset.maxInFlight，
+ * 读取速度由执行速度决定，数据集不会全部进入内存。数据集在独立线程上运行，同时运行的数据集不超过 dataset.maxConcurrent，
+ * 不占用 Quartz 线程。<br/>
+ * 已连续完成的行数 (水位) 定期写入检查点，同一检查点再次运行时跳过已完成的行，中断的周期可以继续执行。
+ * 检查点默认保存在数据库 ete_checkpoint 表，dataset.checkpointDir 不为空时改为写入该目录下的文件。<br/>
+ * 注意: 节点宕机后由其他节点继续执行，需要同时满足 Quartz 集群 (JDBC JobStore，quartz.cluster.enabled=true，
+ * RAMJobStore 不会恢复触发) 以及所有节点可见的检查点 (数据库，或共享目录)，否则只能在同一节点重新运行同一周期时继续
+ */
+@Slf4j
+@Component
+public class DatasetRunner {
+    private final RunDispatcher dispatcher;
+    private final ExecutorService runners;
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public DatasetRunner(RunDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        int concurrent = Math.max(1, strToInt(getProperty("dataset.maxConcurrent", "2"), 2));
+        AtomicInteger threads = new AtomicInteger();
+        this.runners = Executors.newFixedThreadPool(concurrent, r -> {
+            Thread thread = new Thread(r, "dataset-runner-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 完成水位，记录从起点开始连续完成的行数
+     */
+    private static class Watermark {
+        private long value;
+        private final TreeSet<Long> done = new TreeSet<>();
+
+        Watermark(long value) {
+            this.value = value;
+        }
+
+        synchronized long complete(long row) {
+            done.add(row);
+            while (!done.isEmpty() && done.first() == value) {
+                done.pollFirst();
+                value++;
+            }
+            return value;
+        }
+
+        synchronized long get() {
+            return value;
+        }
+    }
+
+    /**
+     * 提交数据集运行，立即返回，同一模板的数据集未结束时 {@link #isRunning(String)} 为 true
+     *
+     * @param cd           模板功能代码
+     * @param template     JSON 模板
+     * @param spec         数据源描述，见 {@link DatasetSource#open(String)}
+     * @param checkpointId 检查点标识，为空表示不记录检查点
+     * @param runSource    来源: {@link ProjectUtil#SOURCE_SCHEDULE} 或 {@link ProjectUtil#SOURCE_ADHOC}
+     * @return 本次完成的行数，打开或读取数据出错时异常完成
+     */
+    public CompletableFuture<Long> submit(String cd, String template, String spec, String checkpointId, short runSource) {
+        running.add(cd);
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        try {
+            runners.execute(() -> {
+                try {
+                    future.complete(run(cd, template, DatasetSource.open(spec), checkpointId, runSource));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(e);
+                } catch (Exception e) {
+                    log.error("数据集 {} 运行出错: {}", spec, e.getMessage());
+                    future.completeExceptionally(e);
+                } finally {
+                    running.remove(cd);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.remove(cd);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 模板是否有数据集正在运行或等待运行
+     *
+     * @param cd 模板功能代码
+     * @return 是否正在运行
+     */
+    public boolean isRunning(String cd) {
+        return running.contains(cd);
+    }
+
+    /**
+     * 运行数据集，阻塞直到所有行完成
+     *
+     * @param cd           模板功能代码
+     * @param template     JSON 模板
+     * @param source       数据源，运行结束后关闭
+     * @param checkpointId 检查点标识，为空表示不记录检查点
+     * @param runSource    来源: {@link ProjectUtil#SOURCE_SCHEDULE} 或 {@link ProjectUtil#SOURCE_ADHOC}
+     * @return 本次完成的行数
+     * @throws IOException          读取数据出错
+     * @throws InterruptedException 等待被中断
+     */
+    public long run(String cd, String template, DatasetSource source, String checkpointId, short runSource)
+            throws IOException, InterruptedException {
+        int maxInFlight = Math.max(1, strToInt(getProperty("dataset.maxInFlight", "20"), 20));
+        int every = Math.max(1, strToInt(getProperty("dataset.checkpointEvery", "100"), 100));
+        String checkpoint = isEmpty(checkpointId) ? null : checkpointId;
+
+        long start = checkpoint == null ? 0 : readCheckpoint(checkpoint);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong completed = new AtomicLong();
+        Watermark watermark = null;
+
+        try (DatasetSource rows = source) {
+            long skipped = rows.skip(start);
+            if (skipped > 0) {
+                log.info("数据集 {} 从检查点恢复，跳过 {} 行", cd, skipped);
+            }
+            watermark = new Watermark(skipped);
+            Watermark current = watermark;
+
+            long row = skipped;
+            Map<String, String> params;
+            while (true) {
+                inFlight.acquire();
+                params = rows.next();
+                if (params == null) {
+                    inFlight.release();
+                    break;
+                }
+
+                long index = row++;
+                dispatcher.submit(cd, template, params, runSource).whenComplete((result, e) -> {
+                    current.complete(index);
+                    if (checkpoint != null && completed.incrementAndGet() % every == 0) {
+                        writeCheckpoint(checkpoint, current);
+                    }
+                    inFlight.release();
+                });
+            }
+
+            // 等待最后一批完成
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (IOException | InterruptedException e) {
+            // 读取出错或被中断，保存当前水位，下次从这里继续
+            if (checkpoint != null && watermark != null) {
+                writeCheckpoint(checkpoint, watermark);
+            }
+            throw e;
+        }
+
+        if (checkpoint != null) {
+            deleteCheckpoint(checkpoint);
+        }
+        long total = watermark.get() - start;
+        log.info("数据集 {} 运行结束，完成 {} 行", cd, total);
+        return total;
+    }
+
+    /**
+     * 检查点文件名，仅在配置了 dataset.checkpointDir 时使用
+     *
+     * @param checkpointId 检查点标识
+     * @return 文件完整路径，未配置目录时返回 null
+     */
+    public static String checkpointFile(String checkpointId) {
+        String dir = getProperty("dataset.checkpointDir", "");
+        if (isEmpty(dir)) {
+            return null;
+        }
+        return pathEndWithSeparator(dir) + getValidFilename(checkpointId) + ".ckpt";
+    }
+
+    private static long readCheckpoint(String checkpointId) {
+        String file = checkpointFile(checkpointId);
+        if (file == null) {
+            return Math.max(0, SqlHelper.queryForLong("select watermark from ete_checkpoint where id = ?", 0, checkpointId));
+        }
+        if (!new File(file).exists()) {
+            return 0;
+        }
+        return Math.max(0, strToInt(toStr(stringFromFile(file)).trim(), 0));
+    }
+
+    /**
+     * 写入检查点，持有水位的锁，避免较早计算的水位覆盖较新的值
+     *
+     * @param checkpointId 检查点标识
+     * @param watermark    完成水位
+     */
+    private static void writeCheckpoint(String checkpointId, Watermark watermark) {
+        synchronized (watermark) {
+            try {
+                saveCheckpoint(checkpointId, watermark.get());
+            } catch (Exception e) {
+                log.warn("写入检查点 {} 失败: {}", checkpointId, e.getMessage());
+            }
+        }
+    }
+
+    private static void saveCheckpoint(String checkpointId, long value) {
+        String file = checkpointFile(checkpointId);
+        if (file == null) {
+            if (SqlHelper.update("update ete_checkpoint set watermark = ?, updated = ? where id = ?", value, now(), checkpointId) == 0) {
+                SqlHelper.update("insert into ete_checkpoint (id, watermark, updated) values (?, ?, ?)", checkpointId, value, now());
+            }
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(file).getAbsoluteFile().getParentFile().mkdirs();
+        if (!stringToFile(file, String.valueOf(value))) {
+            log.warn("写入检查点 {} 失败", file);
+        }
+    }
+
+    private static void deleteCheckpoint(String checkpointId) {
+        String file = checkpointFile(checkpointId);
+        try {
+            if (file == null) {
+                SqlHelper.update("delete from ete_checkpoint where id = ?", checkpointId);
+            } else {
+                //noinspection ResultOfMethodCallIgnored
+                new File(file).delete();
+            }
+        } catch (Exception e) {
+            log.warn("删除检查点 {} 失败: {}", checkpointId, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runners.shutdownNow();
+    }
+}
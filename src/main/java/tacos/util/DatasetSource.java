@@ -0,0 +1,79 @@
+package tacos.util;
+
+import tacos.util.Impl.CsvDatasetSource;
+import tacos.util.Impl.JdbcDatasetSource;
+import tacos.util.Impl.JsonLinesDatasetSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 参数数据源 - Parameter dataset source
+ * <p>
+ * 逐行读取参数数据，每行为一个占位符参数集合，不会把整个数据集读入内存。列名不以 @ 开头时自动加上 @，
+ * 例如 CSV 中的 NO 列对应模板中的 @NO 占位符
+ */
+public interface DatasetSource extends Closeable {
+    /**
+     * 读取下一行
+     *
+     * @return 占位符参数，读完返回 null
+     * @throws IOException 读取出错
+     */
+    Map<String, String> next() throws IOException;
+
+    /**
+     * 跳过若干行，用于从检查点恢复
+     *
+     * @param rows 行数
+     * @return 实际跳过的行数
+     * @throws IOException 读取出错
+     */
+    default long skip(long rows) throws IOException {
+        long skipped = 0;
+        while (skipped < rows && next() != null) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * 列名转换为占位符名称
+     *
+     * @param column 列名
+     * @return 以 @ 开头的占位符名称
+     */
+    static String placeholder(String column) {
+        String name = column.trim();
+        return name.startsWith("@") ? name : "@" + name;
+    }
+
+    /**
+     * 根据描述打开数据源，支持以下格式：<ul>
+     * <li>csv:/path/to/file.csv 首行为列名</li>
+     * <li>jsonl:/path/to/file.jsonl 每行一个 JSON 对象</li>
+     * <li>sql:select no, value from patient order by no 数据库分页读取，每页 dataset.pageSize 行</li>
+     * </ul>
+     *
+     * @param spec 数据源描述
+     * @return 数据源
+     * @throws IOException 打开失败
+     */
+    static DatasetSource open(String spec) throws IOException {
+        int index = spec.indexOf(':');
+        String type = index < 0 ? "" : spec.substring(0, index).trim().toLowerCase();
+        String value = index < 0 ? spec : spec.substring(index + 1).trim();
+        switch (type) {
+            case "csv":
+                return new CsvDatasetSource(value);
+            case "jsonl":
+                return new JsonLinesDatasetSource(value);
+            case "sql":
+                return new JdbcDatasetSource(SqlHelper.getDataSource(), value,
+                        Util.strToInt(Util.getProperty("dataset.pageSize", "500"), 500));
+            default:
+                throw new IOException("Unknown dataset type, should be one of [csv, jsonl, sql]: " + spec);
+        }
+    }
+}
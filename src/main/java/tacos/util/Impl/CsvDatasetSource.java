@@ -0,0 +1,112 @@
+package tacos.util.Impl;
+
+import tacos.util.DatasetSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CSV 数据源，首行为列名，支持双引号包含逗号和转义的双引号，不支持跨行字段
+ */
+public class CsvDatasetSource implements DatasetSource {
+    private final BufferedReader reader;
+    private final List<String> columns = new ArrayList<>();
+
+    public CsvDatasetSource(String file) throws IOException {
+        this(Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8));
+    }
+
+    public CsvDatasetSource(Reader reader) throws IOException {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String header = this.reader.readLine();
+        if (header != null) {
+            // 去掉 Excel 导出的 BOM
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+            for (String column : parseLine(header)) {
+                columns.add(DatasetSource.placeholder(column));
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        List<String> values = parseLine(line);
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            row.put(columns.get(i), i < values.size() ? values.get(i) : "");
+        }
+        return row;
+    }
+
+    @Override
+    public long skip(long rows) throws IOException {
+        long skipped = 0;
+        while (skipped < rows) {
+            String line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            if (!line.trim().isEmpty()) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * 解析一行 CSV
+     *
+     * @param line 一行文本
+     * @return 字段列表
+     */
+    static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,99 @@
+package tacos.util.Impl;
+
+import tacos.util.DatasetSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 数据库分页数据源，只读、只向前读取，每次用 limit/offset 读取一页，读完即关闭连接
+ * <p>
+ * 不长时间持有游标：逐行流式读取时，结果集要等所有行执行完才读完，MySQL 会因为 net_write_timeout 中断连接。
+ * 查询语句需要 order by 唯一键保证分页顺序稳定，否则恢复时跳过的行可能不是已完成的行
+ */
+public class JdbcDatasetSource implements DatasetSource {
+    private final DataSource dataSource;
+    private final String sql;
+    private final int pageSize;
+    private final Deque<Map<String, String>> page = new ArrayDeque<>();
+    private long offset;
+    private boolean exhausted;
+
+    public JdbcDatasetSource(DataSource dataSource, String sql, int pageSize) throws IOException {
+        this.dataSource = dataSource;
+        this.sql = sql.trim().replaceAll(";+$", "");
+        this.pageSize = Math.max(1, pageSize);
+        // 先读第一页，尽早发现语句错误
+        fetch();
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        if (page.isEmpty() && !exhausted) {
+            fetch();
+        }
+        return page.pollFirst();
+    }
+
+    /**
+     * 直接移动偏移量，不读取跳过的行
+     *
+     * @param rows 行数
+     * @return 跳过的行数，超过数据集末尾时之后的 {@link #next()} 返回 null
+     */
+    @Override
+    public long skip(long rows) throws IOException {
+        if (rows <= 0) {
+            return 0;
+        }
+        long buffered = Math.min(rows, page.size());
+        for (long i = 0; i < buffered; i++) {
+            page.pollFirst();
+        }
+        if (buffered < rows) {
+            offset += rows - buffered;
+            exhausted = false;
+            page.clear();
+            fetch();
+        }
+        return rows;
+    }
+
+    private void fetch() throws IOException {
+        String paged = "select * from (" + sql + ") dataset_page limit " + pageSize + " offset " + offset;
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             ResultSet resultSet = statement.executeQuery(paged)) {
+            ResultSetMetaData meta = resultSet.getMetaData();
+            String[] columns = new String[meta.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = DatasetSource.placeholder(meta.getColumnLabel(i + 1));
+            }
+            int count = 0;
+            while (resultSet.next()) {
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < columns.length; i++) {
+                    String value = resultSet.getString(i + 1);
+                    row.put(columns[i], value == null ? "" : value);
+                }
+                page.addLast(row);
+                count++;
+            }
+            offset += count;
+            exhausted = count < pageSize;
+        } catch (SQLException e) {
+            throw new IOException("Read dataset page failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        page.clear();
+        exhausted = true;
+    }
+}
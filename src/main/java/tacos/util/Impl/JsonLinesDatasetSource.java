@@ -0,0 +1,75 @@
+package tacos.util.Impl;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import tacos.util.DatasetSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JSON Lines 数据源，每行一个 JSON 对象，值统一转换为字符串
+ */
+public class JsonLinesDatasetSource implements DatasetSource {
+    private final BufferedReader reader;
+
+    public JsonLinesDatasetSource(String file) throws IOException {
+        this(Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8));
+    }
+
+    public JsonLinesDatasetSource(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        JsonObject object;
+        try {
+            object = JsonParser.parseString(line).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid JSON line: " + e.getMessage(), e);
+        }
+        Map<String, String> row = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            JsonElement value = entry.getValue();
+            row.put(DatasetSource.placeholder(entry.getKey()),
+                    value.isJsonNull() ? "" : value.isJsonPrimitive() ? value.getAsString() : value.toString());
+        }
+        return row;
+    }
+
+    @Override
+    public long skip(long rows) throws IOException {
+        long skipped = 0;
+        while (skipped < rows) {
+            String line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            if (!line.trim().isEmpty()) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -1,19 +1,225 @@
 package tacos.util;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
 import lombok.extern.slf4j.Slf4j;
+import org.quartz.DisallowConcurrentExecution;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.quartz.QuartzJobBean;
+import tacos.model.JobRecord;
+import tacos.model.ScriptResult;
 
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static tacos.util.Util.*;
+
+/**
+ * 定时监控任务
+ * <p>
+ * 每次触发读取模板和参数，分发到 {@link RunDispatcher} 执行，并等待本周期的运行结束：<ul>
+ * <li>同一任务不会并发执行，上一周期未结束时，下一次触发顺延，延迟超过 job.maxDelay 的触发直接跳过 (数据集任务除外)</li>
+ * <li>上一周期遗留 (等待超时) 的模板本周期不再分发，避免任务堆积</li>
+ * <li>JobDataMap 中的 cd 可以只运行指定模板，逗号分隔</li>
+ * <li>JobDataMap 中的 params 可以指定占位符参数，JSON 对象或对象数组，否则使用 {@link ProjectUtil#loadParams(String)}</li>
+ * <li>JobDataMap 中的 suite 可以改为运行套件 (见 {@link SuiteRunner})，逗号分隔，每组占位符参数运行一次套件</li>
+ * <li>JobDataMap 中的 network 可以指定网络条件 (见 {@link NetworkMatrix})，逗号分隔，每个模板在各网络条件下并行运行一次</li>
+ * <li>JobDataMap 中的 dataset 可以指定参数数据集 (见 {@link DatasetSource#open(String)})，由 {@link DatasetRunner} 异步运行，
+ * 中断后从检查点继续；集群恢复的触发可能延迟很久，数据集任务不受 job.maxDelay 限制</li>
+ * </ul>
+ */
 @Slf4j
+@DisallowConcurrentExecution
 public class Job extends QuartzJobBean {
+    private static final int HISTORY_SIZE = 100;
+    private static final Deque<JobRecord> history = new ArrayDeque<>();
+    private static final Gson GSON = new Gson();
+
+    @Autowired
+    private ProjectUtil projectUtil;
+    @Autowired
+    private RunDispatcher dispatcher;
+    @Autowired
+    private DatasetRunner datasetRunner;
+    @Autowired
+    private SuiteRunner suiteRunner;
+    @Autowired
+    private NetworkMatrix networkMatrix;
 
     @Override
     protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
         log.debug("开始定时任务");
 
-        // 这里写你的定时任务代码
+        JobRecord record = new JobRecord();
+        Date scheduled = context.getScheduledFireTime() == null ? context.getFireTime() : context.getScheduledFireTime();
+        record.setScheduledFireTime(scheduled);
+        record.setFireTime(context.getFireTime());
+        record.setQueueDelay(diffTime(scheduled, context.getFireTime()));
+
+        String dataset = context.getMergedJobDataMap().getString("dataset");
+        long maxDelay = strToInt(getProperty("job.maxDelay", String.valueOf(MS_MINUTE * 30)), (int) (MS_MINUTE * 30));
+        if (record.getQueueDelay() > maxDelay && isEmpty(dataset)) {
+            log.warn("定时任务触发延迟 {} ms，超过 {} ms，跳过本周期", record.getQueueDelay(), maxDelay);
+            record.setSkipped(true);
+            addHistory(record);
+            return;
+        }
+
+        projectUtil.refreshIfChanged();
+        String[] only = splitTrim(context.getMergedJobDataMap().getString("cd"), ",");
+        List<Map<String, String>> fixedParams = parseParams(context.getMergedJobDataMap().getString("params"));
+        String[] network = splitTrim(context.getMergedJobDataMap().getString("network"), ",");
+
+        String[] suites = splitTrim(context.getMergedJobDataMap().getString("suite"), ",");
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (String suite : suites) {
+            if (dispatcher.inFlight(SuiteRunner.key(suite)) > 0) {
+                log.warn("套件 {} 上一周期还未结束，本周期跳过", suite);
+                record.setCoalesced(record.getCoalesced() + 1);
+                continue;
+            }
+            for (Map<String, String> params : fixedParams.isEmpty() ? List.of(new HashMap<String, String>()) : fixedParams) {
+                try {
+                    futures.add(suiteRunner.submit(suite, params, ProjectUtil.SOURCE_SCHEDULE));
+                } catch (IllegalArgumentException e) {
+                    log.error("套件 {} 无法运行: {}", suite, e.getMessage());
+                }
+            }
+        }
+        for (String cd : suites.length > 0 ? Collections.<String>emptyList() : projectUtil.getTemplateCodes()) {
+            if (only.length > 0 && !inList(only, cd)) {
+                continue;
+            }
+            if (dispatcher.inFlight(cd) > 0 || datasetRunner.isRunning(cd)) {
+                log.warn("模板 {} 上一周期还有 {} 个运行未结束，本周期跳过", cd, dispatcher.inFlight(cd));
+                record.setCoalesced(record.getCoalesced() + 1);
+                continue;
+            }
+            String template = projectUtil.getTemplate(cd);
+            if (!isEmpty(dataset)) {
+                // 检查点按计划触发时间区分，节点宕机后恢复执行时触发时间不变，可以继续
+                String checkpointId = context.getJobDetail().getKey() + "-" + cd + "-" + format(scheduled, FORMAT_SHORT_DATETIME);
+                futures.add(datasetRunner.submit(cd, template, dataset, checkpointId, ProjectUtil.SOURCE_SCHEDULE));
+                continue;
+            }
+            List<Map<String, String>> paramSets = fixedParams.isEmpty() ? projectUtil.loadParams(cd) : fixedParams;
+            if (network.length > 0) {
+                if (Arrays.stream(network).anyMatch(profile -> dispatcher.inFlight(NetworkMatrix.key(cd, profile)) > 0)) {
+                    log.warn("模板 {} 上一周期的网络条件矩阵还未结束，本周期跳过", cd);
+                    record.setCoalesced(record.getCoalesced() + 1);
+                    continue;
+                }
+                for (Map<String, String> params : paramSets) {
+                    try {
+                        futures.add(networkMatrix.submit(cd, Arrays.asList(network), params, ProjectUtil.SOURCE_SCHEDULE));
+                    } catch (IllegalArgumentException e) {
+                        log.error("模板 {} 网络条件矩阵无法运行: {}", cd, e.getMessage());
+                    }
+                }
+                continue;
+            }
+            for (Map<String, String> params : paramSets) {
+                futures.add(dispatcher.submit(cd, template, params, ProjectUtil.SOURCE_SCHEDULE));
+            }
+        }
+        record.setDispatched(record.getDispatched() + futures.size());
+
+        long timeout = strToInt(getProperty("job.timeout", String.valueOf(MS_MINUTE * 50)), (int) (MS_MINUTE * 50));
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("定时任务等待超时 {} ms，未完成的运行在下一周期合并", timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("定时任务运行出错: " + e.getMessage());
+        }
+
+        record.setFailed((int) futures.stream().filter(Job::failed).count());
+
+        record.setDuration(diffTime(record.getFireTime(), now()));
+        addHistory(record);
+        context.setResult(record);
+        log.debug("结束定时任务，排队 {} ms，耗时 {} ms，分发 {} 个运行", record.getQueueDelay(), record.getDuration(), record.getDispatched());
+    }
+
+    /**
+     * 运行是否已经出错结束，未结束的不算
+     */
+    private static boolean failed(CompletableFuture<?> future) {
+        if (!future.isDone()) {
+            return false;
+        }
+        if (future.isCompletedExceptionally()) {
+            return true;
+        }
+        Object result = future.getNow(null);
+        return result instanceof ScriptResult && !isEmpty(((ScriptResult) result).errorMessage);
+    }
+
+    /**
+     * 解析占位符参数
+     *
+     * @param json JSON 对象或者对象数组
+     * @return 参数列表，为空或者格式有误时返回空列表
+     */
+    static List<Map<String, String>> parseParams(String json) {
+        List<Map<String, String>> list = new ArrayList<>();
+        if (isEmpty(json)) {
+            return list;
+        }
+
+        Type type = new TypeToken<Map<String, String>>() {
+        }.getType();
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            if (element.isJsonArray()) {
+                for (JsonElement item : element.getAsJsonArray()) {
+                    list.add(GSON.fromJson(item, type));
+                }
+            } else {
+                list.add(GSON.fromJson(element, type));
+            }
+        } catch (Exception e) {
+            log.error("占位符参数格式有误: " + e.getMessage());
+        }
+        return list;
+    }
+
+    private static void addHistory(JobRecord record) {
+        Metrics.timer("ete_job_queue_delay_seconds").recordMillis(record.getQueueDelay());
+        if (record.isSkipped()) {
+            Metrics.counter("ete_job_skipped_total").inc();
+        } else {
+            Metrics.timer("ete_job_duration_seconds").recordMillis(record.getDuration());
+            Metrics.counter("ete_job_dispatched_total").add(record.getDispatched());
+            Metrics.counter("ete_job_coalesced_total").add(record.getCoalesced());
+        }
+        synchronized (history) {
+            if (history.size() >= HISTORY_SIZE) {
+                history.removeFirst();
+            }
+            history.addLast(record);
+        }
+    }
 
-        log.debug("结束定时任务");
+    /**
+     * 最近的任务执行记录
+     *
+     * @return 执行记录，按时间先后排列
+     */
+    public static List<JobRecord> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
     }
 }
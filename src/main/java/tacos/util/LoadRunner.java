@@ -0,0 +1,321 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tacos.model.LoadPlan;
+import tacos.model.LoadReport;
+import tacos.model.ScriptResult;
+import tacos.model.ScriptStep;
+
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import static tacos.util.Util.*;
+
+/**
+ * 负载测试 - Load runner
+ * <p>
+ * N 个虚拟用户同时运行同一模板，观察目标系统在并发下的表现，同一时间只运行一个测试：<ul>
+ * <li>每个用户独占一个无界面浏览器 (独立的浏览器池，不占用监控运行的浏览器)，爬坡时间内均匀启动，稳定运行后结束</li>
+ * <li>pacing 限制每个用户两次迭代开始的最小间隔，thinkTime 加在测量区间之外的步骤之间</li>
+ * <li>用户数量不超过主机容量 {@link #capacity()}: load.maxUsers、CPU 数 × load.usersPerCpu、
+ * 空闲内存 / load.browserMemoryMb 中最小的</li>
+ * <li>运行中 {@link #getReport()} 返回实时的百分位和出错率，结束后为最终报告</li>
+ * </ul>
+ * 运行指标带 run="load" 标签，与监控运行分开统计，模板的缓存、拦截等配置与监控运行相同
+ */
+@Slf4j
+@Component
+public class LoadRunner {
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_DONE = "done";
+    public static final String STATUS_STOPPED = "stopped";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final ProjectUtil projectUtil;
+    private final SessionCache sessions;
+    private final IntFunction<BrowserPool> pools;
+    private volatile Test current;
+
+    /**
+     * 一次负载测试的状态
+     */
+    private static class Test {
+        final String id = UUID.randomUUID().toString();
+        final LoadPlan plan;
+        final int users;
+        final BrowserPool pool;
+        final Date start = now();
+        final AtomicInteger active = new AtomicInteger();
+        final LongAdder iterations = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final Metrics.Timer duration = new Metrics.Timer("ete_load_iteration_seconds", "", 0);
+        final Map<Integer, Metrics.Timer> measures = new TreeMap<>();
+        final List<Thread> threads = new ArrayList<>();
+        final CompletableFuture<LoadReport> done = new CompletableFuture<>();
+        volatile Date end;
+        volatile boolean stopped;
+
+        Test(LoadPlan plan, int users, BrowserPool pool) {
+            this.plan = plan;
+            this.users = users;
+            this.pool = pool;
+            for (int i = 1; i <= 3; i++) {
+                measures.put(i, new Metrics.Timer("ete_load_measure_seconds", "", 0));
+            }
+        }
+    }
+
+    @Autowired
+    public LoadRunner(ProjectUtil projectUtil, SessionCache sessions) {
+        this(projectUtil, sessions, size -> new BrowserPool(size, () -> ScriptExecutor.getInstance(true), "pool", "load"));
+    }
+
+    LoadRunner(ProjectUtil projectUtil, SessionCache sessions, IntFunction<BrowserPool> pools) {
+        this.projectUtil = projectUtil;
+        this.sessions = sessions;
+        this.pools = pools;
+        Metrics.gauge("ete_load_active_users", () -> current == null ? 0 : current.active.get());
+    }
+
+    /**
+     * 主机能同时运行的浏览器数量
+     *
+     * @return 至少为 1
+     */
+    public static int capacity() {
+        int capacity = Runtime.getRuntime().availableProcessors() * strToInt(getProperty("load.usersPerCpu", "4"), 4);
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            long freeMb = ((com.sun.management.OperatingSystemMXBean) os).getFreeMemorySize() / 1024 / 1024;
+            capacity = (int) Math.min(capacity, freeMb / Math.max(1, strToInt(getProperty("load.browserMemoryMb", "250"), 250)));
+        }
+        int configured = strToInt(getProperty("load.maxUsers", "0"), 0);
+        if (configured > 0) {
+            capacity = Math.min(capacity, configured);
+        }
+        return Math.max(1, capacity);
+    }
+
+    /**
+     * 开始负载测试，立即返回
+     *
+     * @param plan 测试计划
+     * @return 测试结束时得到最终报告
+     * @throws IllegalArgumentException 模板不存在或者用户数量小于 1
+     * @throws IllegalStateException    已经有测试在运行
+     */
+    public synchronized CompletableFuture<LoadReport> start(LoadPlan plan) {
+        if (current != null && current.end == null) {
+            throw new IllegalStateException("load test is running: " + current.id);
+        }
+        String template = projectUtil.getTemplate(plan.getCd());
+        if (template == null) {
+            throw new IllegalArgumentException("template not found: " + plan.getCd());
+        }
+        if (plan.getUsers() < 1) {
+            throw new IllegalArgumentException("users should be at least 1");
+        }
+
+        int users = Math.min(plan.getUsers(), capacity());
+        if (users < plan.getUsers()) {
+            log.warn("负载测试用户数量 {} 超过主机容量，按 {} 运行", plan.getUsers(), users);
+        }
+        Test test = new Test(plan, users, pools.apply(users));
+        current = test;
+        long begin = System.currentTimeMillis();
+        long endAt = begin + plan.getRampUp() + plan.getSteady();
+        List<ScriptStep> loginSteps = ScriptExecutor.buildScript(projectUtil.getTemplate(ProjectUtil.TEMPLATE_LOGIN), plan.getParams());
+        List<ScriptStep> steps = ScriptExecutor.buildScript(template, plan.getParams());
+        for (int i = 0; i < users; i++) {
+            long startAt = begin + plan.getRampUp() * i / users;
+            Thread thread = new Thread(() -> user(test, loginSteps, steps, startAt, endAt), "load-user-" + (i + 1));
+            thread.setDaemon(true);
+            test.threads.add(thread);
+        }
+        test.threads.forEach(Thread::start);
+
+        Thread coordinator = new Thread(() -> finish(test), "load-coordinator");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        log.info("负载测试 {} 开始: {} 个用户运行 {}", test.id, users, plan.getCd());
+        return test.done;
+    }
+
+    /**
+     * 提前结束当前测试，正在运行的迭代完成后用户退出
+     *
+     * @return 当前报告，没有测试时返回 null
+     */
+    public LoadReport stop() {
+        Test test = current;
+        if (test == null) {
+            return null;
+        }
+        test.stopped = true;
+        test.threads.forEach(Thread::interrupt);
+        return report(test);
+    }
+
+    /**
+     * 当前或者最近一次测试的报告
+     *
+     * @return 运行中为实时数据，没有测试时返回 null
+     */
+    public LoadReport getReport() {
+        Test test = current;
+        return test == null ? null : report(test);
+    }
+
+    private void user(Test test, List<ScriptStep> loginSteps, List<ScriptStep> steps, long startAt, long endAt) {
+        if (!sleepUntil(test, startAt)) {
+            return;
+        }
+        ScriptExecutor executor;
+        try {
+            executor = test.pool.lease(strToInt(getProperty("dispatch.leaseTimeout", "600000"), 600000));
+        } catch (InterruptedException e) {
+            return;
+        }
+        if (executor == null) {
+            test.errors.increment();
+            Metrics.counter("ete_load_iterations_total", "result", "error").inc();
+            return;
+        }
+
+        boolean healthy = true;
+        test.active.incrementAndGet();
+        executor.setRunType(ScriptExecutor.RUN_LOAD);
+        executor.setThinkTime(test.plan.getThinkTime());
+        try {
+            while (!test.stopped && System.currentTimeMillis() < endAt) {
+                long iterationStart = System.currentTimeMillis();
+                if (!ProjectUtil.TEMPLATE_LOGIN.equals(test.plan.getCd())) {
+                    sessions.login(executor, loginSteps);
+                }
+                ScriptResult result = executor.execute(steps, test.plan.getCd(), false);
+                if (Thread.currentThread().isInterrupted()) {
+                    // 提前结束时中断的迭代不计入
+                    break;
+                }
+                record(test, result);
+                if (!isEmpty(result.errorMessage)) {
+                    sessions.invalidate(executor);
+                }
+                long wait = Math.min(test.plan.getPacing() - (System.currentTimeMillis() - iterationStart), endAt - System.currentTimeMillis());
+                if (wait > 0 && !sleepUntil(test, System.currentTimeMillis() + wait)) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            healthy = false;
+            test.errors.increment();
+            log.warn("负载测试用户出错: {}", e.getMessage());
+        } finally {
+            executor.setThinkTime(0);
+            executor.setRunType(ScriptExecutor.RUN_MONITOR);
+            test.active.decrementAndGet();
+            test.pool.release(executor, healthy);
+        }
+    }
+
+    private static void record(Test test, ScriptResult result) {
+        boolean ok = isEmpty(result.errorMessage);
+        test.iterations.increment();
+        if (!ok) {
+            test.errors.increment();
+        }
+        Metrics.counter("ete_load_iterations_total", "result", ok ? "ok" : "error").inc();
+        if (result.start != null && result.end != null) {
+            test.duration.recordMillis(diffTime(result.start, result.end));
+        }
+        Float[] measures = {result.measure_time_1, result.measure_time_2, result.measure_time_3};
+        for (int i = 0; i < measures.length; i++) {
+            if (measures[i] != null) {
+                test.measures.get(i + 1).recordMillis((long) (measures[i] * 1000));
+            }
+        }
+    }
+
+    /**
+     * 等待到指定时刻
+     *
+     * @return 测试被提前结束时返回 false
+     */
+    private static boolean sleepUntil(Test test, long time) {
+        long wait;
+        while (!test.stopped && (wait = time - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return !test.stopped;
+    }
+
+    private void finish(Test test) {
+        for (Thread thread : test.threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        test.end = now();
+        test.pool.close();
+        LoadReport report = report(test);
+        log.info("负载测试 {} 结束: {} 次迭代，出错率 {}，p90 {} s", test.id, report.getIterations(), report.getErrorRate(),
+                report.getDuration().get("p90"));
+        test.done.complete(report);
+    }
+
+    private static LoadReport report(Test test) {
+        LoadReport report = new LoadReport();
+        report.setId(test.id);
+        report.setStatus(test.end == null ? STATUS_RUNNING : test.stopped ? STATUS_STOPPED : STATUS_DONE);
+        report.setPlan(test.plan);
+        report.setUsers(test.users);
+        report.setStart(test.start);
+        report.setEnd(test.end);
+        report.setActiveUsers(test.active.get());
+        long iterations = test.iterations.sum();
+        long errors = test.errors.sum();
+        report.setIterations(iterations);
+        report.setErrors(errors);
+        report.setErrorRate(iterations == 0 ? (errors > 0 ? 1 : 0) : round((double) errors / Math.max(iterations, errors)));
+        long elapsed = diffTime(test.start, test.end == null ? now() : test.end);
+        report.setThroughput(elapsed <= 0 ? 0 : round(iterations * 60000.0 / elapsed));
+        report.setDuration(percentiles(test.duration));
+        test.measures.forEach((measure, timer) -> {
+            if (timer.getCount() > 0) {
+                report.getMeasures().put("measure_time_" + measure, percentiles(timer));
+            }
+        });
+        return report;
+    }
+
+    private static Map<String, Double> percentiles(Metrics.Timer timer) {
+        Map<String, Double> map = new LinkedHashMap<>();
+        for (double quantile : QUANTILES) {
+            map.put("p" + Math.round(quantile * 100), round(timer.percentile(quantile)));
+        }
+        return map;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+    }
+}
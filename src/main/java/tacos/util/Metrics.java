@@ -0,0 +1,396 @@
+package tacos.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 运行指标 - Metrics registry
+ * <p>
+ * 计数器、计时器和仪表，通过 {@link #scrape()} 输出 Prometheus 文本格式 (见 /metrics)。<br/>
+ * 记录时只使用 LongAdder 和原子数组，不加锁，不影响被测量的运行；统计和百分位在抓取时计算。<br/>
+ * 同名同标签返回同一个实例，热点路径上可以保存实例引用，避免每次拼接标签
+ * <pre>{@code
+ * Metrics.counter("ete_runs_total", "cd", "D01").inc();
+ * long start = System.nanoTime();
+ * ...
+ * Metrics.timer("ete_step_duration_seconds", "action", "click").record(System.nanoTime() - start);
+ * }</pre>
+ */
+public class Metrics {
+    private static final Map<String, Meter> meters = new ConcurrentHashMap<>();
+
+    /**
+     * 计时器窗口使用的时钟，单位 ms，测试时可以替换
+     */
+    static LongSupplier clock = System::currentTimeMillis;
+
+    private Metrics() {
+    }
+
+    /**
+     * 指标基类
+     */
+    public abstract static class Meter {
+        final String name;
+        final String labels;
+
+        Meter(String name, String labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        abstract String type();
+
+        abstract void write(StringBuilder sb);
+
+        void line(StringBuilder sb, String suffix, String extraLabel, double value) {
+            sb.append(name).append(suffix);
+            if (!labels.isEmpty() || extraLabel != null) {
+                sb.append('{').append(labels);
+                if (extraLabel != null) {
+                    sb.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+                }
+                sb.append('}');
+            }
+            sb.append(' ');
+            if (value == (long) value) {
+                sb.append((long) value);
+            } else {
+                sb.append(value);
+            }
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * 计数器，只增不减
+     */
+    public static class Counter extends Meter {
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name, String labels) {
+            super(name, labels);
+        }
+
+        public void inc() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void write(StringBuilder sb) {
+            line(sb, "", null, count.sum());
+        }
+    }
+
+    /**
+     * 计时器，按对数分桶统计耗时，百分位的相对误差约 10%，范围 100µs ~ 28 分钟
+     * <p>
+     * 百分位只统计最近 metrics.window 分钟 (默认 5) 的记录：分桶按分钟轮转，环形保存每分钟一组，过期的一组在下次写入时清零，
+     * 反映当前状态，不会被进程启动以来的历史稀释；_sum 和 _count 仍然是累计值。窗口为 0 时统计全部记录 (例如一次压测的报告)
+     */
+    public static class Timer extends Meter {
+        private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+        private static final long MIN_NANOS = 100_000;
+        private static final double FACTOR = Math.pow(2, 0.25);
+        private static final double LOG_FACTOR = Math.log(FACTOR);
+        private static final int BUCKETS = 96;
+        private static final int DEFAULT_WINDOW = Math.max(0, Util.strToInt(Util.getProperty("metrics.window", "5"), 5));
+
+        /**
+         * 一分钟的分桶
+         */
+        private static final class Slot {
+            volatile long minute;
+            final AtomicLongArray buckets = new AtomicLongArray(BUCKETS + 1);
+            final AtomicLong max = new AtomicLong();
+        }
+
+        private final Slot[] slots;
+        private final boolean windowed;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        Timer(String name, String labels) {
+            this(name, labels, DEFAULT_WINDOW);
+        }
+
+        /**
+         * @param name    指标名称
+         * @param labels  标签文本
+         * @param minutes 百分位统计窗口，单位分钟，0 表示统计全部记录
+         */
+        Timer(String name, String labels, int minutes) {
+            super(name, labels);
+            this.windowed = minutes > 0;
+            this.slots = new Slot[Math.max(1, minutes)];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new Slot();
+            }
+        }
+
+        /**
+         * 当前分钟的分桶，轮转到过期的一组时先清零
+         */
+        private Slot current(long minute) {
+            if (!windowed) {
+                return slots[0];
+            }
+            Slot slot = slots[(int) (minute % slots.length)];
+            if (slot.minute != minute) {
+                synchronized (slot) {
+                    if (slot.minute != minute) {
+                        for (int i = 0; i < slot.buckets.length(); i++) {
+                            slot.buckets.set(i, 0);
+                        }
+                        slot.max.set(0);
+                        slot.minute = minute;
+                    }
+                }
+            }
+            return slot;
+        }
+
+        /**
+         * 窗口内的分桶是否有效
+         */
+        private boolean live(Slot slot, long minute) {
+            return !windowed || minute - slot.minute < slots.length;
+        }
+
+        /**
+         * 记录一次耗时
+         *
+         * @param nanos 耗时，单位 ns
+         */
+        public void record(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            int index = nanos <= MIN_NANOS ? 0 : Math.min(BUCKETS, 1 + (int) (Math.log((double) nanos / MIN_NANOS) / LOG_FACTOR));
+            Slot slot = current(clock.getAsLong() / Util.MS_MINUTE);
+            slot.buckets.incrementAndGet(index);
+            count.increment();
+            sum.add(nanos);
+            if (nanos > slot.max.get()) {
+                slot.max.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        /**
+         * 记录一次耗时
+         *
+         * @param millis 耗时，单位 ms
+         */
+        public void recordMillis(long millis) {
+            record(millis * 1_000_000);
+        }
+
+        /**
+         * @return 累计记录次数
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * 窗口内的百分位耗时
+         *
+         * @param quantile 0 ~ 1
+         * @return 单位 s，窗口内没有记录时为 0
+         */
+        public double percentile(double quantile) {
+            long minute = clock.getAsLong() / Util.MS_MINUTE;
+            long total = 0;
+            long max = 0;
+            long[] snapshot = new long[BUCKETS + 1];
+            for (Slot slot : slots) {
+                if (!live(slot, minute)) {
+                    continue;
+                }
+                for (int i = 0; i < snapshot.length; i++) {
+                    long n = slot.buckets.get(i);
+                    snapshot[i] += n;
+                    total += n;
+                }
+                max = Math.max(max, slot.max.get());
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= Math.max(1, rank)) {
+                    // 取桶上下界的几何中点，不超过实际最大值
+                    double upper = i == 0 ? MIN_NANOS : MIN_NANOS * Math.pow(FACTOR, i);
+                    double nanos = i == 0 ? upper : upper / Math.sqrt(FACTOR);
+                    return Math.min(nanos, max) / 1e9;
+                }
+            }
+            return max / 1e9;
+        }
+
+        @Override
+        String type() {
+            return "summary";
+        }
+
+        @Override
+        void write(StringBuilder sb) {
+            for (double quantile : QUANTILES) {
+                line(sb, "", "quantile=\"" + quantile + "\"", percentile(quantile));
+            }
+            line(sb, "_sum", null, sum.sum() / 1e9);
+            line(sb, "_count", null, count.sum());
+        }
+    }
+
+    /**
+     * 仪表，抓取时读取当前值；也用于输出其他组件自己维护的累计值 (counter 类型)
+     */
+    public static class Gauge extends Meter {
+        private final DoubleSupplier supplier;
+        private final String type;
+
+        Gauge(String name, String labels, DoubleSupplier supplier, String type) {
+            super(name, labels);
+            this.supplier = supplier;
+            this.type = type;
+        }
+
+        @Override
+        String type() {
+            return type;
+        }
+
+        @Override
+        void write(StringBuilder sb) {
+            double value;
+            try {
+                value = supplier.getAsDouble();
+            } catch (RuntimeException e) {
+                value = Double.NaN;
+            }
+            line(sb, "", null, value);
+        }
+    }
+
+    /**
+     * 标签转为 Prometheus 格式，k1="v1",k2="v2"
+     *
+     * @param labels 标签名和值交替
+     * @return 标签文本
+     */
+    static String labels(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 取得计数器，不存在时创建
+     *
+     * @param name   指标名称，以 _total 结尾
+     * @param labels 标签名和值交替
+     * @return Counter
+     */
+    public static Counter counter(String name, String... labels) {
+        String text = labels(labels);
+        return (Counter) meters.computeIfAbsent(name + '{' + text, k -> new Counter(name, text));
+    }
+
+    /**
+     * 取得计时器，不存在时创建
+     *
+     * @param name   指标名称，以 _seconds 结尾
+     * @param labels 标签名和值交替
+     * @return Timer
+     */
+    public static Timer timer(String name, String... labels) {
+        String text = labels(labels);
+        return (Timer) meters.computeIfAbsent(name + '{' + text, k -> new Timer(name, text));
+    }
+
+    /**
+     * 注册仪表，同名同标签的仪表被替换
+     *
+     * @param name     指标名称
+     * @param supplier 读取当前值
+     * @param labels   标签名和值交替
+     */
+    public static void gauge(String name, DoubleSupplier supplier, String... labels) {
+        String text = labels(labels);
+        meters.put(name + '{' + text, new Gauge(name, text, supplier, "gauge"));
+    }
+
+    /**
+     * 注册由其他组件累计的计数，抓取时读取，同名同标签的被替换
+     *
+     * @param name     指标名称，以 _total 结尾
+     * @param supplier 读取当前累计值
+     * @param labels   标签名和值交替
+     */
+    public static void counterOf(String name, DoubleSupplier supplier, String... labels) {
+        String text = labels(labels);
+        meters.put(name + '{' + text, new Gauge(name, text, supplier, "counter"));
+    }
+
+    /**
+     * 输出全部指标，Prometheus 文本格式 0.0.4
+     *
+     * @return 指标文本
+     */
+    public static String scrape() {
+        Map<String, Meter> sorted = new TreeMap<>(meters);
+        StringBuilder sb = new StringBuilder(sorted.size() * 64);
+        String last = null;
+        for (Meter meter : sorted.values()) {
+            if (!meter.name.equals(last)) {
+                sb.append("# TYPE ").append(meter.name).append(' ').append(meter.type()).append('\n');
+                last = meter.name;
+            }
+            meter.write(sb);
+        }
+        return sb.toString();
+    }
+}
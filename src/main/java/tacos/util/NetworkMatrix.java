@@ -0,0 +1,189 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tacos.model.MatrixResult;
+import tacos.model.NetworkProfile;
+import tacos.model.ScriptResult;
+import tacos.model.ScriptStep;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static tacos.util.Util.*;
+
+/**
+ * 网络条件矩阵 - Network condition matrix
+ * <p>
+ * 同一模板在多个网络条件下各运行一次，一个周期内看出各交易对带宽和延迟的敏感程度：<ul>
+ * <li>网络条件: network.profile.名称=延迟 ms,下行 byte/s,上行 byte/s，-1 为不限，例如 network.profile.4G=50,1500000,750000</li>
+ * <li>network.profiles 为默认使用的网络条件，逗号分隔，第一个作为对比基准</li>
+ * <li>每个网络条件作为一个任务交给 {@link RunDispatcher}，排队代码为 模板@网络条件，各自租用浏览器并行运行</li>
+ * <li>结果记录使用的网络条件 ({@link ScriptResult#networkProfile})，测量值按网络条件记录在 ete_network_measure_seconds</li>
+ * </ul>
+ * 对比报告每个网络条件一行: network, latency, download, upload, duration (s), measure_time_1~3 (s)，
+ * slowdown 为耗时相对基准的倍数
+ */
+@Slf4j
+@Component
+public class NetworkMatrix {
+    private final RunDispatcher dispatcher;
+    private final ProjectUtil projectUtil;
+    private final Map<String, MatrixResult> latest = new ConcurrentHashMap<>();
+
+    @Autowired
+    public NetworkMatrix(RunDispatcher dispatcher, ProjectUtil projectUtil) {
+        this.dispatcher = dispatcher;
+        this.projectUtil = projectUtil;
+    }
+
+    /**
+     * 读取网络条件配置
+     *
+     * @param name 名称
+     * @return 网络条件，没有配置时返回 null
+     */
+    public static NetworkProfile getProfile(String name) {
+        String[] values = split(ProjectUtil.getConfig("network.profile." + name, ""), ",");
+        if (values.length == 0) {
+            return null;
+        }
+        NetworkProfile profile = new NetworkProfile();
+        profile.setName(name);
+        profile.setLatency(strToInt(values[0].trim(), 0));
+        profile.setDownload(values.length > 1 ? strToInt(values[1].trim(), -1) : -1);
+        profile.setUpload(values.length > 2 ? strToInt(values[2].trim(), -1) : -1);
+        return profile;
+    }
+
+    /**
+     * 默认使用的网络条件
+     *
+     * @return network.profiles 中的名称
+     */
+    public static List<String> getProfileNames() {
+        return Arrays.asList(split(ProjectUtil.getConfig("network.profiles", ""), ","));
+    }
+
+    /**
+     * 网络条件运行在 {@link RunDispatcher} 中的排队代码
+     *
+     * @param cd      模板功能代码
+     * @param profile 网络条件名称
+     * @return 模板@网络条件
+     */
+    public static String key(String cd, String profile) {
+        return cd + "@" + profile;
+    }
+
+    /**
+     * 提交矩阵运行，立即返回
+     *
+     * @param cd       模板功能代码
+     * @param profiles 网络条件名称，第一个作为对比基准
+     * @param params   占位符参数
+     * @param source   来源: {@link ProjectUtil#SOURCE_SCHEDULE} 或 {@link ProjectUtil#SOURCE_ADHOC}
+     * @return 全部网络条件结束时得到结果和对比报告
+     * @throws IllegalArgumentException 模板不存在、没有网络条件或者网络条件未配置
+     */
+    public CompletableFuture<MatrixResult> submit(String cd, List<String> profiles, Map<String, String> params, short source) {
+        String template = projectUtil.getTemplate(cd);
+        if (template == null) {
+            throw new IllegalArgumentException("template not found: " + cd);
+        }
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException("no network profile, check network.profiles");
+        }
+        List<NetworkProfile> list = new ArrayList<>();
+        for (String name : profiles) {
+            NetworkProfile profile = getProfile(name.trim());
+            if (profile == null) {
+                throw new IllegalArgumentException("network profile not found: " + name);
+            }
+            list.add(profile);
+        }
+
+        MatrixResult matrix = new MatrixResult();
+        matrix.setCd(cd);
+        matrix.setSubmitted(now());
+        List<CompletableFuture<ScriptResult>> futures = new ArrayList<>();
+        for (NetworkProfile profile : list) {
+            futures.add(dispatcher.submit(key(cd, profile.getName()), executor -> run(executor, cd, template, params, profile), source));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            for (int i = 0; i < list.size(); i++) {
+                matrix.getResults().put(list.get(i).getName(), futures.get(i).join());
+            }
+            matrix.setComparison(compare(list, matrix.getResults()));
+            matrix.setFinished(now());
+            latest.put(cd, matrix);
+            return matrix;
+        });
+    }
+
+    private ScriptResult run(ScriptExecutor executor, String cd, String template, Map<String, String> params, NetworkProfile profile) {
+        if (!ProjectUtil.TEMPLATE_LOGIN.equals(cd)) {
+            dispatcher.login(executor, params);
+        }
+        List<ScriptStep> steps = ScriptExecutor.buildScript(template, params);
+        executor.setNetworkProfile(profile);
+        try {
+            ScriptResult result = executor.execute(steps, cd, true);
+            Float[] measures = {result.measure_time_1, result.measure_time_2, result.measure_time_3};
+            for (int i = 0; i < measures.length; i++) {
+                if (measures[i] != null) {
+                    Metrics.timer("ete_network_measure_seconds", "tag", cd, "network", profile.getName(), "measure", String.valueOf(i + 1))
+                            .recordMillis((long) (measures[i] * 1000));
+                }
+            }
+            return result;
+        } finally {
+            executor.setNetworkProfile(null);
+        }
+    }
+
+    /**
+     * 生成对比报告
+     *
+     * @param profiles 网络条件，第一个作为基准
+     * @param results  各网络条件的运行结果
+     * @return 每个网络条件一行
+     */
+    static List<Map<String, Object>> compare(List<NetworkProfile> profiles, Map<String, ScriptResult> results) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Double baseline = null;
+        for (NetworkProfile profile : profiles) {
+            ScriptResult result = results.get(profile.getName());
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("network", profile.getName());
+            row.put("latency", profile.getLatency());
+            row.put("download", profile.getDownload());
+            row.put("upload", profile.getUpload());
+            Double duration = result.start == null || result.end == null ? null : diffTime(result.start, result.end) / 1000.0;
+            row.put("duration", duration);
+            row.put("measure_time_1", result.measure_time_1);
+            row.put("measure_time_2", result.measure_time_2);
+            row.put("measure_time_3", result.measure_time_3);
+            if (rows.isEmpty()) {
+                baseline = duration;
+            }
+            if (baseline != null && baseline > 0 && duration != null) {
+                row.put("slowdown", Math.round(duration / baseline * 100) / 100.0);
+            }
+            row.put("error", left(toStr(result.errorMessage), System.lineSeparator()));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * 各模板最近一次的矩阵结果
+     *
+     * @return 模板功能代码 -&gt; 结果
+     */
+    public Map<String, MatrixResult> getLatest() {
+        return new TreeMap<>(latest);
+    }
+}
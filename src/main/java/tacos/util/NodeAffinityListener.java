@@ -0,0 +1,122 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.listeners.TriggerListenerSupport;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import static tacos.util.Util.isEmpty;
+import static tacos.util.Util.split;
+import static tacos.util.Util.strToInt;
+
+/**
+ * 集群节点亲和性 - Node affinity hint for a clustered scheduler
+ * <p>
+ * 任务的 JobDataMap 中可以用 {@link #KEY_POOL} 指定由哪个浏览器池执行，每个节点通过 quartz.node.pools 声明自己拥有的池。
+ * 若触发发生在不拥有该池的节点上，本节点放弃执行，并立即创建一个一次性触发器转交给集群中的其他节点，
+ * 转交超过 maxHops 次后就地执行，保证任务不会丢失 <br/>
+ * 亲和性是概率性的提示而不是保证: 转交触发器交回整个集群，由任意空闲节点获取，可能再次落到同一个或另一个非拥有节点上。
+ * N 个节点中有 k 个拥有该池时，每次转交约有 k/N 的机会到达拥有节点，转交次数由 JobDataMap 中的 {@link #KEY_HOPS} 计数，
+ * 到达 maxHops 仍未命中时在当前节点执行，此时使用的不是指定的浏览器池 <br/>
+ * Jobs may name a browser pool in their data map, a node that does not own the pool vetoes the fire and hands it
+ * back to the cluster with a one-shot trigger. Affinity is best effort: any node may pick the hand-off up again,
+ * including the same one, so each hop reaches an owner with probability of roughly owners / nodes.
+ * After maxHops hand-offs the job runs wherever it lands.
+ * <p>
+ * 作为全局监听器，同时统计转交和 misfire 次数，见 {@link Metrics}
+ */
+@Slf4j
+public class NodeAffinityListener extends TriggerListenerSupport {
+    /**
+     * JobDataMap 中的浏览器池名称
+     */
+    public static final String KEY_POOL = "pool";
+
+    /**
+     * JobDataMap 中的已转交次数
+     */
+    public static final String KEY_HOPS = "affinity.hops";
+
+    /**
+     * 转交触发器所在的分组
+     */
+    public static final String HANDOFF_GROUP = "affinity-handoff";
+
+    private final Set<String> ownedPools;
+    private final int maxHops;
+
+    /**
+     * @param pools   本节点拥有的浏览器池，逗号分隔，为空表示接受所有任务
+     * @param maxHops 最多转交次数
+     */
+    public NodeAffinityListener(String pools, int maxHops) {
+        Set<String> set = new HashSet<>();
+        if (!isEmpty(pools)) {
+            for (String pool : split(pools, ",")) {
+                if (!isEmpty(pool.trim())) {
+                    set.add(pool.trim());
+                }
+            }
+        }
+        this.ownedPools = Collections.unmodifiableSet(set);
+        this.maxHops = maxHops;
+    }
+
+    @Override
+    public String getName() {
+        return "nodeAffinity";
+    }
+
+    /**
+     * 判断本节点是否应该执行该池的任务
+     *
+     * @param pool 任务指定的浏览器池
+     * @return 拥有该池或者未做限制时返回 true
+     */
+    public boolean owns(String pool) {
+        return isEmpty(pool) || ownedPools.isEmpty() || ownedPools.contains(pool);
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+        JobDataMap data = context.getMergedJobDataMap();
+        String pool = data.getString(KEY_POOL);
+        if (owns(pool)) {
+            return false;
+        }
+
+        int hops = strToInt(data.getString(KEY_HOPS), 0);
+        if (hops >= maxHops) {
+            log.info("任务 {} 转交 {} 次仍未找到池 {} 的节点，就地执行", trigger.getJobKey(), hops, pool);
+            return false;
+        }
+
+        try {
+            Scheduler scheduler = context.getScheduler();
+            Trigger handoff = TriggerBuilder.newTrigger()
+                    .withIdentity(trigger.getKey().getName() + "-" + scheduler.getSchedulerInstanceId() + "-" + System.nanoTime(), HANDOFF_GROUP)
+                    .forJob(trigger.getJobKey())
+                    .usingJobData(trigger.getJobDataMap())
+                    .usingJobData(KEY_HOPS, String.valueOf(hops + 1))
+                    .startAt(new Date())
+                    .withSchedule(SimpleScheduleBuilder.simpleSchedule().withMisfireHandlingInstructionFireNow())
+                    .build();
+            scheduler.scheduleJob(handoff);
+            Metrics.counter("ete_quartz_handoffs_total").inc();
+            log.debug("节点 {} 不拥有池 {}，转交任务 {}", scheduler.getSchedulerInstanceId(), pool, trigger.getJobKey());
+            return true;
+        } catch (SchedulerException e) {
+            log.warn("转交任务失败，就地执行: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        Metrics.counter("ete_quartz_misfires_total", "group", trigger.getKey().getGroup()).inc();
+    }
+}
@@ -0,0 +1,328 @@
+package tacos.util;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import okhttp3.EventListener;
+import okio.Okio;
+import org.springframework.stereotype.Component;
+import tacos.model.Probe;
+import tacos.model.ProbeResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static tacos.util.Util.*;
+
+/**
+ * HTTP 探测 - Browserless HTTP/API probe engine
+ * <p>
+ * 不启动浏览器，直接请求页面和 API，适合高频检查，与浏览器运行互不影响：<ul>
+ * <li>共用一个异步 HTTP 客户端 (OkHttp)，连接池保持长连接，服务器支持时使用 HTTP/2 多路复用</li>
+ * <li>同时进行的请求不超过 probe.maxRequests，同一主机不超过 probe.maxRequestsPerHost，避免影响被测系统</li>
+ * <li>每个探测单独设置整个请求的超时，由客户端共用的超时队列处理，不为每个请求创建线程</li>
+ * <li>断言: 状态码、响应体包含的文本、响应头、总耗时上限</li>
+ * <li>记录 DNS、连接、TLS、首字节、下载各阶段耗时，指标见 ete_probe_phase_seconds{probe,phase}</li>
+ * </ul>
+ * probe.enabled=true 时按 probe.file (默认 classpath:probe/probes.json) 中的探测定义定时执行，同一探测上一次未结束时跳过本次
+ */
+@Slf4j
+@Component
+public class ProbeEngine {
+    private static final Gson GSON = new Gson();
+    private static final String[] PHASES = {"dns", "connect", "tls", "ttfb", "download", "total"};
+
+    private final OkHttpClient client;
+    private final Map<String, ProbeResult> latest = new ConcurrentHashMap<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<Call, Phases> phases = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 记录一次请求各阶段的时刻，单位 ns
+     */
+    private static class Phases extends EventListener {
+        long callStart;
+        long dnsStart;
+        long dnsEnd;
+        long connectStart;
+        long connectEnd;
+        long tlsStart;
+        long tlsEnd;
+        long requestStart;
+        long headersStart;
+        long bodyEnd;
+        long bodyBytes;
+        boolean connected;
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+            dnsEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connectStart = System.nanoTime();
+            connected = true;
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tlsEnd = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+            connectEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            if (requestStart == 0) {
+                requestStart = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            headersStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            bodyEnd = System.nanoTime();
+            bodyBytes = byteCount;
+        }
+    }
+
+    public ProbeEngine() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(strToInt(getProperty("probe.maxRequests", "64"), 64));
+        dispatcher.setMaxRequestsPerHost(strToInt(getProperty("probe.maxRequestsPerHost", "16"), 16));
+        client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(strToInt(getProperty("probe.maxIdleConnections", "32"), 32), 5, TimeUnit.MINUTES))
+                .eventListenerFactory(call -> phases.computeIfAbsent(call, c -> new Phases()))
+                .followRedirects(true)
+                .build();
+    }
+
+    /**
+     * 执行一次探测，立即返回
+     *
+     * @param probe 探测定义
+     * @return 请求结束时得到结果，失败也正常完成
+     */
+    public CompletableFuture<ProbeResult> probe(Probe probe) {
+        CompletableFuture<ProbeResult> future = new CompletableFuture<>();
+        ProbeResult result = new ProbeResult();
+        result.setName(probe.getName());
+        result.setUrl(probe.getUrl());
+        result.setStart(now());
+
+        Call call;
+        try {
+            call = client.newCall(request(probe));
+        } catch (IllegalArgumentException e) {
+            result.setError(e.getMessage());
+            future.complete(finish(probe, result));
+            return future;
+        }
+        long timeout = probe.getTimeout() > 0 ? probe.getTimeout() : strToInt(getProperty("probe.timeout", "10000"), 10000);
+        call.timeout().timeout(timeout, TimeUnit.MILLISECONDS);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                timings(phases.remove(call), result);
+                result.setError(call.isCanceled() || "timeout".equals(e.getMessage()) ? "timeout " + timeout + " ms" : toStr(e.getMessage()));
+                future.complete(finish(probe, result));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody body = response.body()) {
+                    // 只有需要检查内容时才读入内存，否则读完丢弃，传输的字节数见 Phases#responseBodyEnd
+                    String text = "";
+                    if (body != null && !isEmpty(probe.getExpectContains())) {
+                        text = body.string();
+                    } else if (body != null) {
+                        body.source().readAll(Okio.blackhole());
+                    }
+                    result.setStatus(response.code());
+                    result.setProtocol(response.protocol().toString());
+                    result.setError(check(probe, response, text));
+                } catch (IOException e) {
+                    result.setError(toStr(e.getMessage()));
+                }
+                timings(phases.remove(call), result);
+                future.complete(finish(probe, result));
+            }
+        });
+        return future;
+    }
+
+    private static Request request(Probe probe) {
+        Request.Builder builder = new Request.Builder().url(probe.getUrl());
+        probe.getHeaders().forEach(builder::header);
+        RequestBody body = null;
+        if (probe.getBody() != null) {
+            String type = probe.getHeaders().getOrDefault("Content-Type", "application/json");
+            body = RequestBody.create(MediaType.parse(type), probe.getBody());
+        }
+        return builder.method(probe.getMethod().toUpperCase(), body).build();
+    }
+
+    /**
+     * 检查断言
+     *
+     * @return 第一个不满足的断言，全部满足时为空
+     */
+    static String check(Probe probe, Response response, String body) {
+        int status = response.code();
+        if (probe.getExpectStatus() > 0 ? status != probe.getExpectStatus() : status >= 400) {
+            return "unexpected status " + status;
+        }
+        if (!isEmpty(probe.getExpectContains()) && !body.contains(probe.getExpectContains())) {
+            return "body does not contain: " + probe.getExpectContains();
+        }
+        if (!isEmpty(probe.getExpectHeader())) {
+            int colon = probe.getExpectHeader().indexOf(':');
+            String name = colon < 0 ? probe.getExpectHeader() : probe.getExpectHeader().substring(0, colon).trim();
+            String value = response.header(name);
+            if (value == null || colon >= 0 && !value.contains(probe.getExpectHeader().substring(colon + 1).trim())) {
+                return "header mismatch: " + probe.getExpectHeader();
+            }
+        }
+        return "";
+    }
+
+    private static void timings(Phases phases, ProbeResult result) {
+        if (phases == null) {
+            return;
+        }
+        result.setReused(!phases.connected);
+        result.setBytes(phases.bodyBytes);
+        result.setDns(ms(phases.dnsStart, phases.dnsEnd));
+        result.setTls(ms(phases.tlsStart, phases.tlsEnd));
+        result.setConnect(ms(phases.connectStart, phases.connectEnd) - result.getTls());
+        result.setTtfb(ms(phases.requestStart, phases.headersStart));
+        result.setDownload(ms(phases.headersStart, phases.bodyEnd));
+        result.setTotal(ms(phases.callStart, phases.bodyEnd > 0 ? phases.bodyEnd : System.nanoTime()));
+    }
+
+    private static double ms(long start, long end) {
+        return start == 0 || end < start ? 0 : Math.round((end - start) / 1e4) / 100.0;
+    }
+
+    private ProbeResult finish(Probe probe, ProbeResult result) {
+        if (isEmpty(result.getError()) && probe.getMaxDuration() > 0 && result.getTotal() > probe.getMaxDuration()) {
+            result.setError("slow: " + result.getTotal() + " ms > " + probe.getMaxDuration() + " ms");
+        }
+        result.setOk(isEmpty(result.getError()));
+        String name = toStr(probe.getName());
+        Metrics.counter("ete_probe_total", "probe", name, "result", result.isOk() ? "ok" : "error").inc();
+        if (result.getStatus() > 0) {
+            double[] values = {result.getDns(), result.getConnect(), result.getTls(), result.getTtfb(), result.getDownload(), result.getTotal()};
+            for (int i = 0; i < PHASES.length; i++) {
+                Metrics.timer("ete_probe_phase_seconds", "probe", name, "phase", PHASES[i]).record((long) (values[i] * 1_000_000));
+            }
+        }
+        latest.put(name, result);
+        return result;
+    }
+
+    /**
+     * 各探测最近一次的结果
+     *
+     * @return 名称 -&gt; 结果
+     */
+    public Map<String, ProbeResult> getLatest() {
+        return new TreeMap<>(latest);
+    }
+
+    /**
+     * 读取探测定义
+     *
+     * @return 探测列表，读取失败时为空
+     */
+    public static List<Probe> loadProbes() {
+        String file = getProperty("probe.file", "");
+        try (InputStream in = isEmpty(file) ? ProbeEngine.class.getResourceAsStream("/probe/probes.json")
+                : new java.io.FileInputStream(new File(file))) {
+            if (in == null) {
+                return new ArrayList<>();
+            }
+            List<Probe> probes = GSON.fromJson(new String(in.readAllBytes(), StandardCharsets.UTF_8), new TypeToken<List<Probe>>() {
+            }.getType());
+            return probes == null ? new ArrayList<>() : probes;
+        } catch (Exception e) {
+            log.error("读取探测定义 {} 出错: {}", file, e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!strToBoolean(getProperty("probe.enabled", "false"))) {
+            return;
+        }
+        List<Probe> probes = loadProbes();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "probe-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long defaultInterval = strToInt(getProperty("probe.interval", "60000"), 60000);
+        long spread = 0;
+        for (Probe probe : probes) {
+            long interval = probe.getInterval() > 0 ? probe.getInterval() : defaultInterval;
+            // 错开首次执行，避免同时发出全部请求
+            long delay = probes.isEmpty() ? 0 : spread++ * interval / probes.size();
+            scheduler.scheduleAtFixedRate(() -> tick(probe), delay, interval, TimeUnit.MILLISECONDS);
+        }
+        log.info("HTTP 探测已启动: {} 个", probes.size());
+    }
+
+    private void tick(Probe probe) {
+        String name = toStr(probe.getName());
+        if (!inFlight.add(name)) {
+            Metrics.counter("ete_probe_skipped_total", "probe", name).inc();
+            return;
+        }
+        probe(probe).whenComplete((result, e) -> inFlight.remove(name));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+}
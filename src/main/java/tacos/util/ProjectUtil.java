@@ -1,37 +1,170 @@
 package tacos.util;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import tacos.model.ScriptStep;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static tacos.util.Util.loadResourceFile;
-import static tacos.util.Util.strToInt;
+import static tacos.util.Util.*;
 
 /**
  * Project Utils
  * <p>
  * 项目专用工具类，无法公开其他项目使用，或者是项目特定依赖包相关的工具类
+ * <p>
+ * 配置和模板只加载一次，保存在不可变的快照中，读取时无锁也不重新解析。以下情况重新生成快照并原子替换：<ul>
+ * <li>template.dir 外部模板目录中的 *.json 文件变化 (WatchService)</li>
+ * <li>config.db.enabled=true 时，ete_config 表的 max(version) 变化，见 {@link #refreshIfChanged()}</li>
+ * <li>调用 {@link #loadConfig()} 或 {@link #loadTemplate()}</li>
+ * </ul>
  *
  * @version 1.0
  * @since 11/3/2022
  */
+@Slf4j
 @Component
 public class ProjectUtil {
     public static final short SOURCE_SCHEDULE = 0;
     public static final short SOURCE_ADHOC = 1;
 
-    private static final Map<String, String> mapConfig = new HashMap<>();
-    private static final Map<String, String> mapTemplate = new HashMap<>();
+    /**
+     * 登录模板，功能脚本运行前需要先登录
+     */
+    public static final String TEMPLATE_LOGIN = "LGN";
+
+    /**
+     * 内置模板，位于资源目录 case/ 下
+     */
+    private static final String[] TEMPLATE_CODES = {
+            "LGN", "D01", "D02", "D04", "D05", "D06", "D07", "D08", "D10", "S06", "S04", "S02"
+    };
+
+    private static final String SQL_CONFIG = "select name, value from ete_config";
+    private static final String SQL_CONFIG_VERSION = "select concat(coalesce(max(version), 0), '/', count(1)) from ete_config";
+
+    /**
+     * 配置和模板快照，创建后不再修改
+     */
+    private static final class Snapshot {
+        final Map<String, String> config;
+        final String configVersion;
+        final Map<String, String> templates;
+        final List<String> codes;
+
+        Snapshot(Map<String, String> config, String configVersion, Map<String, String> templates) {
+            this.config = Collections.unmodifiableMap(config);
+            this.configVersion = configVersion;
+            this.templates = Collections.unmodifiableMap(templates);
+
+            List<String> list = new ArrayList<>();
+            templates.forEach((cd, template) -> {
+                if (template != null && !TEMPLATE_LOGIN.equals(cd)) {
+                    list.add(cd);
+                }
+            });
+            Collections.sort(list);
+            this.codes = Collections.unmodifiableList(list);
+        }
+    }
+
+    private static final AtomicReference<Snapshot> snapshot =
+            new AtomicReference<>(new Snapshot(new HashMap<>(), "", new HashMap<>()));
+    private static volatile boolean loaded = false;
+
+    private WatchService watchService;
+
+    /**
+     * 首次使用前加载配置和模板，若配置了外部模板目录，监视其变化
+     */
+    @PostConstruct
+    public void init() {
+        ensureLoaded();
+        String dir = getProperty("template.dir", "");
+        if (!isEmpty(dir) && new File(dir).isDirectory()) {
+            watchTemplates(Paths.get(dir));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("关闭模板目录监视出错: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * load config and templates if never loaded, otherwise do nothing
+     */
+    public void ensureLoaded() {
+        if (!loaded) {
+            synchronized (ProjectUtil.class) {
+                if (!loaded) {
+                    loadConfig();
+                    loadTemplate();
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * reload the config when the version of ete_config changed, a cheap single row query
+     *
+     * @return true if reloaded
+     */
+    public boolean refreshIfChanged() {
+        ensureLoaded();
+        if (!strToBoolean(getProperty("config.db.enabled", "false"))) {
+            return false;
+        }
+        try {
+            String version = SqlHelper.queryForString(SQL_CONFIG_VERSION);
+            if (equal(version, snapshot.get().configVersion)) {
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("检查配置版本出错: " + e.getMessage());
+            return false;
+        }
+        loadConfig();
+        return true;
+    }
 
     /**
      * load configuration from database or application.properties
      */
     public void loadConfig() {
-        mapConfig.clear();
+        Map<String, String> config = new HashMap<>();
+        Properties properties = loadResourceProperties("application.properties");
+        String file = getAppPath() + "application.properties";
+        if (new File(file).exists()) {
+            properties.putAll(loadProperties(file));
+        }
+        properties.forEach((key, value) -> config.put(key.toString(), value.toString()));
+
+        String version = "";
+        if (strToBoolean(getProperty("config.db.enabled", "false"))) {
+            try {
+                version = SqlHelper.queryForString(SQL_CONFIG_VERSION);
+                SqlHelper.query(SQL_CONFIG, (rs, rowNum) -> config.put(rs.getString(1), rs.getString(2)));
+            } catch (Exception e) {
+                log.warn("读取数据库配置出错: " + e.getMessage());
+            }
+        }
+
+        String configVersion = version;
+        snapshot.updateAndGet(old -> new Snapshot(config, configVersion, old.templates));
     }
 
     /**
@@ -41,7 +174,19 @@ public class ProjectUtil {
      * @return config value string
      */
     public static String getConfig(String name) {
-        return String.valueOf(mapConfig.get(name));
+        return String.valueOf(snapshot.get().config.get(name));
+    }
+
+    /**
+     * get config value by name, fall back to application.properties when not in ete_config
+     *
+     * @param name         the config name
+     * @param defaultValue default value if the config name not exist in both
+     * @return config value string
+     */
+    public static String getConfig(String name, String defaultValue) {
+        String value = snapshot.get().config.get(name);
+        return value == null ? getProperty(name, defaultValue) : value;
     }
 
     /**
@@ -52,27 +197,123 @@ public class ProjectUtil {
      * @return config value
      */
     public static int getConfigInt(String name, int defaultValue) {
-        return strToInt(mapConfig.get(name), defaultValue);
+        return strToInt(snapshot.get().config.get(name), defaultValue);
+    }
+
+    /**
+     * get config value by name
+     *
+     * @param name         the config name
+     * @param defaultValue default value if the config name not exist or parse error
+     * @return config value
+     */
+    public static boolean getConfigBoolean(String name, boolean defaultValue) {
+        try {
+            return strToBoolean(snapshot.get().config.get(name));
+        } catch (IllegalArgumentException e) {
+            return defaultValue;
+        }
     }
 
     /**
-     * load template from files or database
+     * load template from files or database, files in template.dir override the built-in ones
      */
     public void loadTemplate() {
-        mapTemplate.clear();
+        Map<String, String> templates = new HashMap<>();
+        for (String cd : TEMPLATE_CODES) {
+            templates.put(cd, loadResourceFile("case/" + cd + ".json"));
+        }
+
+        String dir = getProperty("template.dir", "");
+        if (!isEmpty(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(dir), "*.json")) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    templates.put(name.substring(0, name.length() - ".json".length()), Files.readString(path));
+                }
+            } catch (IOException e) {
+                log.warn("读取模板目录 {} 出错: {}", dir, e.getMessage());
+            }
+        }
+
+        snapshot.updateAndGet(old -> new Snapshot(old.config, old.configVersion, templates));
+    }
+
+    /**
+     * 监视外部模板目录，文件变化时重新加载模板
+     *
+     * @param dir 模板目录
+     */
+    private void watchTemplates(Path dir) {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            log.warn("无法监视模板目录 {}: {}", dir, e.getMessage());
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    // 编辑器保存时通常连续产生多个事件，稍等片刻合并为一次加载
+                    Thread.sleep(200);
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.context() == null || event.context().toString().endsWith(".json");
+                    }
+                    key.reset();
+                    if (changed) {
+                        loadTemplate();
+                        log.info("模板目录 {} 有变化，已重新加载", dir);
+                    }
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                log.debug("模板目录监视结束");
+            }
+        }, "template-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * get template by function code
+     *
+     * @param cd function code, e.g. D01
+     * @return JSON template, null if not exist
+     */
+    public String getTemplate(String cd) {
+        return snapshot.get().templates.get(cd);
+    }
 
-        mapTemplate.put("LGN", loadResourceFile("case/LGN.json"));
-        mapTemplate.put("D01", loadResourceFile("case/D01.json"));
-        mapTemplate.put("D02", loadResourceFile("case/D02.json"));
-        mapTemplate.put("D04", loadResourceFile("case/D04.json"));
-        mapTemplate.put("D05", loadResourceFile("case/D05.json"));
-        mapTemplate.put("D06", loadResourceFile("case/D06.json"));
-        mapTemplate.put("D07", loadResourceFile("case/D07.json"));
-        mapTemplate.put("D08", loadResourceFile("case/D08.json"));
-        mapTemplate.put("D10", loadResourceFile("case/D10.json"));
-        mapTemplate.put("S06", loadResourceFile("case/S06.json"));
-        mapTemplate.put("S04", loadResourceFile("case/S04.json"));
-        mapTemplate.put("S02", loadResourceFile("case/S02.json"));
+    /**
+     * get all function codes which template is available, the login template excluded
+     *
+     * @return function code list, sorted
+     */
+    public List<String> getTemplateCodes() {
+        return snapshot.get().codes;
+    }
+
+    /**
+     * load placeholder parameter sets of the template, one run per parameter set
+     *
+     * @param cd function code
+     * @return parameter sets, at least one (maybe empty) set so the template runs once
+     */
+    public List<Map<String, String>> loadParams(String cd) {
+        List<Map<String, String>> params = new ArrayList<>();
+        for (String patient : loadPatient()) {
+            Map<String, String> map = new HashMap<>();
+            map.put("@NO", patient);
+            params.add(map);
+        }
+        if (params.isEmpty()) {
+            params.add(new HashMap<>());
+        }
+        return params;
     }
 
     /**
@@ -83,8 +324,7 @@ public class ProjectUtil {
      * @param source test request source: <br/>Schedule task = {@link #SOURCE_SCHEDULE} <br/>ADHOC = {@link #SOURCE_ADHOC}
      */
     public List<String> run(String cd, String seq, short source) {
-        loadConfig();
-        loadTemplate();
+        ensureLoaded();
         loadPatient();
 
         List<String> results = new ArrayList<>();
@@ -96,7 +336,7 @@ public class ProjectUtil {
 
         try {
             // Login
-            String tmplLogin = mapTemplate.get("LGN");
+            String tmplLogin = getTemplate(TEMPLATE_LOGIN);
             Map<String, String> placeholder = new HashMap<>();
 
             List<ScriptStep> loginSteps = ScriptExecutor.buildScript(tmplLogin, placeholder);
@@ -117,4 +357,4 @@ public class ProjectUtil {
     }
 
 
-}
\ No newline at end of file
+}
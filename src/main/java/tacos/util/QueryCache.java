@@ -0,0 +1,255 @@
+package tacos.util;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 查询结果缓存 - Read-through query cache
+ * <p>
+ * 以 SQL 文本和绑定参数为键，每次查询可以指定不同的有效期，超出容量时淘汰最久未使用的结果 (LRU)。<br/>
+ * 同一个键未命中时只有第一个调用者执行查询，其他调用者等待同一个结果，避免缓存失效瞬间大量重复查询。<br/>
+ * 结果按 SQL 中 from/join 的表名打标签，通过 {@link SqlHelper} 写入某个表时，该表相关的结果全部失效。
+ * <p>
+ * 表名从 SQL 文本中解析，逗号连接的多表查询只识别第一个表
+ */
+public class QueryCache {
+    private static final Pattern TABLE = Pattern.compile(
+            "\\b(?:from|join|into|update|table)\\s+[`\"]?(?:\\w+[`\"]?\\.[`\"]?)?(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private static final class Key {
+        final String sql;
+        final Object[] args;
+        final int hash;
+
+        Key(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args == null ? new Object[0] : args;
+            this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(this.args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && sql.equals(key.sql) && Arrays.deepEquals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final Set<String> tables;
+        volatile long expireAt = Long.MAX_VALUE;
+
+        Entry(Set<String> tables) {
+            this.tables = tables;
+        }
+
+        boolean expired(long now) {
+            return future.isDone() && now >= expireAt;
+        }
+    }
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<Key>> tags = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * 解析 SQL 涉及的表名
+     *
+     * @param sql SQL statement
+     * @return 小写表名
+     */
+    public static Set<String> tables(String sql) {
+        Set<String> tables = new HashSet<>();
+        Matcher matcher = TABLE.matcher(sql);
+        while (matcher.find()) {
+            tables.add(matcher.group(1).toLowerCase());
+        }
+        return tables;
+    }
+
+    /**
+     * 读取缓存，未命中或已过期时执行 loader 并缓存结果
+     *
+     * @param sql    SQL statement
+     * @param args   bind parameters
+     * @param ttl    有效期，单位 ms
+     * @param loader 执行查询
+     * @param <T>    Type
+     * @return 查询结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String sql, Object[] args, long ttl, Callable<T> loader) {
+        Key key = new Key(sql, args);
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null || entry.expired(System.currentTimeMillis())) {
+                if (entry != null) {
+                    remove(key, entry);
+                }
+                entry = new Entry(tables(sql));
+                entries.put(key, entry);
+                for (String table : entry.tables) {
+                    tags.computeIfAbsent(table, k -> new HashSet<>()).add(key);
+                }
+                evict();
+                owner = true;
+            }
+        }
+
+        if (!owner) {
+            hits.increment();
+            return (T) join(entry.future);
+        }
+
+        misses.increment();
+        try {
+            T value = loader.call();
+            entry.expireAt = System.currentTimeMillis() + ttl;
+            entry.future.complete(value);
+            return value;
+        } catch (Exception e) {
+            // 出错的结果不缓存，等待的调用者收到同样的异常
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    remove(key, entry);
+                }
+            }
+            entry.future.completeExceptionally(e);
+            throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 使涉及指定表的结果失效，正在加载的结果仍返回给等待者，但不再保留
+     *
+     * @param tables 表名
+     * @return 失效的数量
+     */
+    public synchronized int invalidate(Collection<String> tables) {
+        int count = 0;
+        for (String table : tables) {
+            Set<Key> keys = tags.remove(table.toLowerCase());
+            if (keys == null) {
+                continue;
+            }
+            for (Key key : keys) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    remove(key, entry);
+                    count++;
+                }
+            }
+        }
+        invalidations.add(count);
+        return count;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        invalidations.add(entries.size());
+        entries.clear();
+        tags.clear();
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        for (String table : entry.tables) {
+            Set<Key> keys = tags.get(table);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    tags.remove(table);
+                }
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            iterator.remove();
+            // 从标签中移除，entries 已经删除
+            Entry entry = eldest.getValue();
+            for (String table : entry.tables) {
+                Set<Key> keys = tags.get(table);
+                if (keys != null && keys.remove(eldest.getKey()) && keys.isEmpty()) {
+                    tags.remove(table);
+                }
+            }
+            evictions.increment();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * 命中率
+     *
+     * @return 0 ~ 1，没有请求时为 0
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d, hits=%d, misses=%d, hitRate=%.2f, evictions=%d, invalidations=%d",
+                size(), getHits(), getMisses(), getHitRate(), getEvictions(), getInvalidations());
+    }
+}
@@ -0,0 +1,177 @@
+package tacos.util;
+
+import tacos.model.BlockProfile;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tacos.util.Util.*;
+
+/**
+ * 资源拦截 - Resource blocking profiles
+ * <p>
+ * 统计分析脚本、字体、大图片等与测量的功能耗时无关，拦截后运行更快、更稳定。配置 (ete_config 或 application.properties)：<ul>
+ * <li>block.名称.urls: 拦截的 URL，逗号分隔，* 为通配符</li>
+ * <li>block.名称.types: 拦截的资源类型，按扩展名匹配: Image, Font, Media, Stylesheet, Script</li>
+ * <li>block.名称.stubs: 用空函数代替的全局函数，例如 ga,gtag，拦截统计脚本后页面调用时不报错</li>
+ * <li>block.profile.模板: 模板使用的配置，没有时使用 block.profile，默认 none (不拦截)</li>
+ * <li>block.ab=true: A/B 对比，同一模板交替使用配置和 none，见 {@link #report()}</li>
+ * </ul>
+ * 配置通过 DevTools 的 Network.setBlockedURLs 生效 (见 {@link ScriptExecutor})，使用的配置记录在
+ * {@link tacos.model.ScriptResult#blockProfile}，不同配置的耗时分别统计，不会混在一起
+ */
+public class ResourceBlocker {
+    public static final String NONE = "none";
+
+    private static final Map<String, String[]> TYPE_EXTENSIONS = new HashMap<>();
+    private static final Map<String, AtomicLong> abCounters = new ConcurrentHashMap<>();
+    private static final Map<String, Set<String>> seen = new ConcurrentHashMap<>();
+
+    static {
+        TYPE_EXTENSIONS.put("image", new String[]{"png", "jpg", "jpeg", "gif", "webp", "avif", "svg", "ico", "bmp"});
+        TYPE_EXTENSIONS.put("font", new String[]{"woff", "woff2", "ttf", "otf", "eot"});
+        TYPE_EXTENSIONS.put("media", new String[]{"mp4", "webm", "mp3", "ogg", "wav", "m3u8"});
+        TYPE_EXTENSIONS.put("stylesheet", new String[]{"css"});
+        TYPE_EXTENSIONS.put("script", new String[]{"js"});
+    }
+
+    private ResourceBlocker() {
+    }
+
+    /**
+     * 选择本次运行使用的配置
+     *
+     * @param tag 模板功能代码
+     * @return 配置名称，不拦截时为 none
+     */
+    public static String select(String tag) {
+        String name = config("block.profile." + tag);
+        if (isEmpty(name)) {
+            name = config("block.profile");
+        }
+        if (isEmpty(name)) {
+            return NONE;
+        }
+        if ("true".equalsIgnoreCase(config("block.ab"))
+                && abCounters.computeIfAbsent(toStr(tag), k -> new AtomicLong()).getAndIncrement() % 2 == 1) {
+            return NONE;
+        }
+        return name;
+    }
+
+    /**
+     * 读取配置
+     *
+     * @param name 配置名称
+     * @return 配置，none 或者未配置时为空配置
+     */
+    public static BlockProfile getProfile(String name) {
+        BlockProfile profile = new BlockProfile();
+        profile.setName(name);
+        if (NONE.equals(name)) {
+            return profile;
+        }
+        profile.setUrls(list(config("block." + name + ".urls")));
+        profile.setTypes(list(config("block." + name + ".types")));
+        profile.setStubs(list(config("block." + name + ".stubs")));
+        return profile;
+    }
+
+    /**
+     * Network.setBlockedURLs 使用的 URL 模式，资源类型转换为扩展名模式
+     *
+     * @param profile 配置
+     * @return URL 模式
+     */
+    public static List<String> patterns(BlockProfile profile) {
+        List<String> patterns = new ArrayList<>(profile.getUrls());
+        for (String type : profile.getTypes()) {
+            String[] extensions = TYPE_EXTENSIONS.get(type.toLowerCase());
+            if (extensions == null) {
+                continue;
+            }
+            for (String extension : extensions) {
+                patterns.add("*." + extension);
+                patterns.add("*." + extension + "?*");
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * 页面加载前执行的脚本，把 stubs 定义为空函数
+     *
+     * @param profile 配置
+     * @return 脚本，没有 stubs 时为空
+     */
+    public static String stubScript(BlockProfile profile) {
+        StringBuilder sb = new StringBuilder();
+        for (String stub : profile.getStubs()) {
+            if (stub.matches("[A-Za-z_$][\\w$]*")) {
+                sb.append("window.").append(stub).append("=function(){};");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 记录运行耗时，按模板和配置分别统计
+     *
+     * @param tag     模板功能代码
+     * @param profile 配置名称
+     * @param millis  耗时
+     */
+    public static void record(String tag, String profile, long millis) {
+        seen.computeIfAbsent(toStr(tag), k -> ConcurrentHashMap.newKeySet()).add(profile);
+        Metrics.timer("ete_run_block_duration_seconds", "tag", toStr(tag), "block", profile).recordMillis(millis);
+    }
+
+    /**
+     * A/B 报告: 使用过拦截配置的模板，对比各配置与 none 的运行耗时
+     *
+     * @return 每个模板和配置一行: tag, block, count, p50, p90 (单位 s)，saving 为 p50 相对 none 减少的比例
+     */
+    public static List<Map<String, Object>> report() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (String tag : new TreeSet<>(seen.keySet())) {
+            Set<String> profiles = new TreeSet<>(seen.get(tag));
+            if (profiles.size() == 1 && profiles.contains(NONE)) {
+                continue;
+            }
+            double baseline = profiles.contains(NONE) ? timer(tag, NONE).percentile(0.5) : 0;
+            for (String profile : profiles) {
+                Metrics.Timer timer = timer(tag, profile);
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("tag", tag);
+                row.put("block", profile);
+                row.put("count", timer.getCount());
+                row.put("p50", timer.percentile(0.5));
+                row.put("p90", timer.percentile(0.9));
+                if (baseline > 0 && !NONE.equals(profile)) {
+                    row.put("saving", Math.round((1 - timer.percentile(0.5) / baseline) * 1000) / 1000.0);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static Metrics.Timer timer(String tag, String profile) {
+        return Metrics.timer("ete_run_block_duration_seconds", "tag", tag, "block", profile);
+    }
+
+    private static List<String> list(String value) {
+        List<String> list = new ArrayList<>();
+        for (String item : split(value, ",")) {
+            if (!isEmpty(item.trim())) {
+                list.add(item.trim());
+            }
+        }
+        return list;
+    }
+
+    private static String config(String name) {
+        return ProjectUtil.getConfig(name, "");
+    }
+}
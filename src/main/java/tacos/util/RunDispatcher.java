@@ -0,0 +1,335 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tacos.model.ScriptResult;
+import tacos.model.ScriptStep;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static tacos.util.Util.*;
+
+/**
+ * 脚本分发器 - Run dispatcher
+ * <p>
+ * 把模板和参数组成的运行任务分发到浏览器池执行，同时运行的总数不超过浏览器数量，每个模板同时运行的数量不超过
+ * dispatch.cap.模板 (默认 dispatch.cap.default)，其余任务排队等待，不占用工作线程和浏览器。有空位时按以下顺序选择：<ol>
+ * <li>等待超过 dispatch.starvationLimit ms 的定时任务，避免即时运行持续到达时定时任务饿死</li>
+ * <li>即时运行 ({@link ProjectUtil#SOURCE_ADHOC})，先到先运行，插在所有定时任务之前</li>
+ * <li>定时任务，在有任务的模板之间轮流选择，一个模板的大批任务不会挡住其他模板</li>
+ * </ol>
+ * 各类的排队时间见指标 ete_dispatch_queue_wait_seconds{class} <br/>
+ * Dispatches template runs to the browser pool: starved scheduled runs first, then ad-hoc runs, then scheduled runs
+ * round-robin per template, never more than dispatch.cap.&lt;cd&gt; runs of a template in flight.
+ */
+@Slf4j
+@Component
+public class RunDispatcher {
+    private static final String ERROR_NO_BROWSER = "no browser available, lease timeout";
+    private static final String CLASS_ADHOC = "adhoc";
+    private static final String CLASS_SCHEDULE = "schedule";
+
+    private final BrowserPool pool;
+    private final ProjectUtil projectUtil;
+    private final SessionCache sessions;
+    private final ExecutorService workers;
+    private final Map<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+    private final int defaultCap;
+    private final long leaseTimeout;
+    private final long starvationLimit;
+    private final int slots;
+
+    /**
+     * 以下状态由 this 保护
+     */
+    private final Deque<Run> adhoc = new ArrayDeque<>();
+    private final Map<String, Deque<Run>> scheduled = new HashMap<>();
+    private final Deque<String> rotation = new ArrayDeque<>();
+    private final Map<String, Integer> running = new HashMap<>();
+    private int busy;
+
+    /**
+     * 在租用的浏览器上执行的任务，例如一个模板或者一个套件 ({@link SuiteRunner})
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * @param executor 租用的浏览器，任务结束后归还
+         * @return 运行结果
+         * @throws Exception 浏览器异常，该浏览器会被丢弃
+         */
+        ScriptResult run(ScriptExecutor executor) throws Exception;
+    }
+
+    /**
+     * 一次运行任务
+     */
+    private static class Run {
+        final String cd;
+        final Task task;
+        final short source;
+        final long submitted = System.currentTimeMillis();
+        final CompletableFuture<ScriptResult> future = new CompletableFuture<>();
+
+        Run(String cd, Task task, short source) {
+            this.cd = cd;
+            this.task = task;
+            this.source = source;
+        }
+
+        String type() {
+            return source == ProjectUtil.SOURCE_ADHOC ? CLASS_ADHOC : CLASS_SCHEDULE;
+        }
+    }
+
+    @Autowired
+    public RunDispatcher(BrowserPool pool, ProjectUtil projectUtil, SessionCache sessions) {
+        this.pool = pool;
+        this.projectUtil = projectUtil;
+        this.sessions = sessions;
+        this.defaultCap = strToInt(getProperty("dispatch.cap.default", "1"), 1);
+        this.leaseTimeout = strToInt(getProperty("dispatch.leaseTimeout", "600000"), 600000);
+        this.starvationLimit = strToInt(getProperty("dispatch.starvationLimit", "300000"), 300000);
+        this.slots = pool.getSize();
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(slots, r -> {
+            Thread thread = new Thread(r, "run-dispatcher-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.gauge("ete_dispatch_queue_depth", () -> getQueued(CLASS_ADHOC), "class", CLASS_ADHOC);
+        Metrics.gauge("ete_dispatch_queue_depth", () -> getQueued(CLASS_SCHEDULE), "class", CLASS_SCHEDULE);
+        Metrics.gauge("ete_dispatch_in_flight", () -> pending.values().stream().mapToInt(AtomicInteger::get).sum());
+    }
+
+    /**
+     * 提交一次运行，立即返回
+     *
+     * @param cd       模板功能代码
+     * @param template JSON 模板
+     * @param params   占位符参数
+     * @param source   来源: {@link ProjectUtil#SOURCE_SCHEDULE} 或 {@link ProjectUtil#SOURCE_ADHOC}
+     * @return 运行完成时得到结果
+     */
+    public CompletableFuture<ScriptResult> submit(String cd, String template, Map<String, String> params, short source) {
+        return submit(cd, executor -> runTemplate(executor, cd, template, params), source);
+    }
+
+    /**
+     * 提交一个任务，排队、同时运行上限和优先级与模板相同，立即返回
+     *
+     * @param cd     排队和同时运行上限使用的代码，例如套件使用 suite.名称
+     * @param task   任务
+     * @param source 来源: {@link ProjectUtil#SOURCE_SCHEDULE} 或 {@link ProjectUtil#SOURCE_ADHOC}
+     * @return 运行完成时得到结果
+     */
+    public CompletableFuture<ScriptResult> submit(String cd, Task task, short source) {
+        Run run = new Run(cd, task, source);
+        pending.computeIfAbsent(cd, k -> new AtomicInteger()).incrementAndGet();
+        synchronized (this) {
+            if (source == ProjectUtil.SOURCE_ADHOC) {
+                adhoc.addLast(run);
+            } else {
+                scheduled.computeIfAbsent(cd, k -> {
+                    rotation.addLast(k);
+                    return new ArrayDeque<>();
+                }).addLast(run);
+            }
+        }
+        drain();
+        return run.future;
+    }
+
+    /**
+     * 模板还未完成 (排队或正在运行) 的任务数量
+     *
+     * @param cd 模板功能代码
+     * @return 未完成的任务数量
+     */
+    public int inFlight(String cd) {
+        AtomicInteger count = pending.get(cd);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * 模板同时运行的上限
+     *
+     * @param cd 模板功能代码
+     * @return 上限，至少为 1
+     */
+    public int getCap(String cd) {
+        return Math.max(1, strToInt(getProperty("dispatch.cap." + cd, null), defaultCap));
+    }
+
+    /**
+     * 排队的任务数量
+     *
+     * @param type adhoc 或 schedule
+     * @return 排队数量，不含正在运行的
+     */
+    public synchronized int getQueued(String type) {
+        if (CLASS_ADHOC.equals(type)) {
+            return adhoc.size();
+        }
+        return scheduled.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    /**
+     * 有空位时选择下一个任务交给工作线程，直到没有空位或没有可运行的任务
+     */
+    private void drain() {
+        while (true) {
+            Run run;
+            synchronized (this) {
+                if (busy >= slots) {
+                    return;
+                }
+                run = next(System.currentTimeMillis());
+                if (run == null) {
+                    return;
+                }
+                busy++;
+                running.merge(run.cd, 1, Integer::sum);
+            }
+            workers.execute(() -> {
+                try {
+                    execute(run);
+                } finally {
+                    synchronized (this) {
+                        busy--;
+                        running.merge(run.cd, -1, Integer::sum);
+                    }
+                    drain();
+                }
+            });
+        }
+    }
+
+    /**
+     * 选择下一个任务并从队列中移除，调用时持有 this
+     *
+     * @param now 当前时刻
+     * @return 下一个任务，没有可运行的返回 null
+     */
+    private Run next(long now) {
+        // 等待最久的定时任务超过饥饿上限时优先
+        Deque<Run> oldest = null;
+        for (Map.Entry<String, Deque<Run>> entry : scheduled.entrySet()) {
+            Run head = entry.getValue().peekFirst();
+            if (head != null && hasRoom(entry.getKey()) && (oldest == null || head.submitted < oldest.peekFirst().submitted)) {
+                oldest = entry.getValue();
+            }
+        }
+        if (oldest != null && now - oldest.peekFirst().submitted >= starvationLimit) {
+            Metrics.counter("ete_dispatch_starvation_promotions_total").inc();
+            return oldest.pollFirst();
+        }
+
+        for (Iterator<Run> iterator = adhoc.iterator(); iterator.hasNext(); ) {
+            Run run = iterator.next();
+            if (hasRoom(run.cd)) {
+                iterator.remove();
+                return run;
+            }
+        }
+
+        // 模板之间轮流，队列为空的模板移出轮转
+        for (int i = rotation.size(); i > 0; i--) {
+            String cd = rotation.pollFirst();
+            Deque<Run> queue = scheduled.get(cd);
+            if (queue.isEmpty()) {
+                scheduled.remove(cd);
+                continue;
+            }
+            rotation.addLast(cd);
+            if (hasRoom(cd)) {
+                return queue.pollFirst();
+            }
+        }
+        return null;
+    }
+
+    private boolean hasRoom(String cd) {
+        return running.getOrDefault(cd, 0) < getCap(cd);
+    }
+
+    private void execute(Run run) {
+        long start = System.currentTimeMillis();
+        Tracer.Span span = Tracer.startRun("run " + run.cd, run.submitted).attr("cd", run.cd).attr("source", run.source).attr("class", run.type());
+        Tracer.start("queue", run.submitted * 1_000_000).end();
+        ScriptResult result = new ScriptResult();
+        ScriptExecutor executor = null;
+        boolean healthy = true;
+        try {
+            try (Tracer.Span lease = Tracer.start("lease").attr("timeout", leaseTimeout)) {
+                executor = pool.lease(leaseTimeout);
+                lease.attr("leased", executor != null);
+            }
+            if (executor == null) {
+                result.errorMessage = now(FORMAT_DATETIME) + ": " + ERROR_NO_BROWSER;
+                return;
+            }
+            log.debug("运行 {} ({}) 排队 {} ms", run.cd, run.type(), start - run.submitted);
+            Metrics.timer("ete_dispatch_queue_wait_seconds", "class", run.type(), "cd", run.cd).recordMillis(start - run.submitted);
+
+            result = run.task.run(executor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.errorMessage = now(FORMAT_DATETIME) + ": interrupted";
+        } catch (Exception e) {
+            // 浏览器崩溃等异常，丢弃该浏览器
+            healthy = false;
+            log.error("运行 {} 出错: {}", run.cd, e.getMessage());
+            result.errorMessage = now(FORMAT_DATETIME) + ": " + e.getMessage();
+        } finally {
+            pool.release(executor, healthy);
+            pending.get(run.cd).decrementAndGet();
+            if (!isEmpty(result.errorMessage)) {
+                span.error(left(result.errorMessage, System.lineSeparator()));
+            }
+            span.end();
+            run.future.complete(result);
+        }
+    }
+
+    /**
+     * 登录 (使用缓存的会话) 后运行一个模板
+     */
+    private ScriptResult runTemplate(ScriptExecutor executor, String cd, String template, Map<String, String> params) {
+        if (!ProjectUtil.TEMPLATE_LOGIN.equals(cd)) {
+            login(executor, params);
+        }
+        List<ScriptStep> steps = ScriptExecutor.buildScript(template, params);
+        ScriptResult result = executor.execute(steps, cd, true);
+        if (!isEmpty(result.errorMessage)) {
+            // 可能是会话失效导致，下次重新登录
+            sessions.invalidate(executor);
+        }
+        return result;
+    }
+
+    /**
+     * 确保浏览器处于登录状态，优先使用缓存的会话
+     *
+     * @param executor 浏览器
+     * @param params   占位符参数
+     * @return 登录方式，见 {@link SessionCache#login(ScriptExecutor, List)}
+     */
+    String login(ScriptExecutor executor, Map<String, String> params) {
+        try (Tracer.Span login = Tracer.start("login")) {
+            List<ScriptStep> loginSteps = ScriptExecutor.buildScript(projectUtil.getTemplate(ProjectUtil.TEMPLATE_LOGIN), params);
+            String mode = sessions.login(executor, loginSteps);
+            login.attr("session", mode);
+            return mode;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,203 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.stereotype.Component;
+import tacos.model.Schedule;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+import static tacos.util.Util.*;
+
+/**
+ * 数据库定时计划加载器
+ * <p>
+ * 定期检查 ete_schedule 表的版本 (最大 version 和记录数)，有变化时读取全部计划，与 Scheduler 中的 {@link #GROUP} 分组比较，
+ * 只新增、更新或删除有差异的任务，无需重启，浏览器和缓存不受影响 <br/>
+ * Polls the version of the ete_schedule table and applies the differences to the running Scheduler.
+ * <p>
+ * schedule.spread=true 时，相同 cron 的计划由 {@link TriggerSpreader} 错开触发时刻，避免同一秒启动大量浏览器
+ */
+@Slf4j
+@Component
+public class ScheduleLoader {
+    /**
+     * 数据库计划在 Scheduler 中的分组
+     */
+    public static final String GROUP = "db-schedule";
+
+    private static final String KEY_VERSION = "version";
+    private static final String SQL_VERSION = "select concat(coalesce(max(version), 0), '/', count(1)) from ete_schedule";
+    private static final String SQL_SCHEDULES = "select name, cron, cd, params, dataset, priority, enabled, version from ete_schedule";
+
+    @Autowired
+    private Scheduler scheduler;
+
+    private volatile String lastVersion;
+    private volatile String lastProfile = "";
+
+    /**
+     * 启用时注册定期检查任务，间隔 schedule.pollInterval ms
+     */
+    @PostConstruct
+    public void init() throws SchedulerException {
+        if (!strToBoolean(getProperty("schedule.db.enabled", "false"))) {
+            return;
+        }
+
+        int interval = strToInt(getProperty("schedule.pollInterval", "30000"), 30000);
+        JobDetail job = JobBuilder.newJob(ScheduleReloadJob.class).withIdentity("reload", "system").storeDurably().build();
+        Trigger trigger = TriggerBuilder.newTrigger().withIdentity("reload", "system")
+                .withSchedule(SimpleScheduleBuilder.repeatSecondlyForever()
+                        .withIntervalInMilliseconds(interval)
+                        .withMisfireHandlingInstructionNextWithRemainingCount())
+                .build();
+        scheduler.scheduleJob(job, Collections.singleton(trigger), true);
+        log.info("数据库定时计划已启用，检查间隔 {} ms", interval);
+    }
+
+    /**
+     * 检查版本，有变化时重新加载
+     *
+     * @return 有变化返回 true
+     */
+    public boolean reload() throws SchedulerException {
+        String version = SqlHelper.queryForString(SQL_VERSION);
+        if (equal(version, lastVersion)) {
+            return false;
+        }
+
+        List<Schedule> schedules = SqlHelper.query(SQL_SCHEDULES, new BeanPropertyRowMapper<>(Schedule.class));
+        apply(schedules);
+        lastVersion = version;
+        return true;
+    }
+
+    /**
+     * 把计划应用到 Scheduler，只处理有差异的部分
+     *
+     * @param schedules 全部计划
+     * @return 新增、更新、删除的数量
+     */
+    public int[] apply(List<Schedule> schedules) throws SchedulerException {
+        int added = 0;
+        int updated = 0;
+        int removed = 0;
+
+        Map<String, String> crons = new HashMap<>();
+        for (Schedule schedule : schedules) {
+            if (schedule.isEnabled()) {
+                crons.put(schedule.getName(), schedule.getCron());
+            }
+        }
+        if (strToBoolean(getProperty("schedule.spread", "true"))) {
+            crons = TriggerSpreader.plan(crons, strToInt(getProperty("schedule.maxJitter", "30"), 30));
+        }
+
+        Set<JobKey> existing = new HashSet<>(scheduler.getJobKeys(GroupMatcher.jobGroupEquals(GROUP)));
+        for (Schedule schedule : schedules) {
+            if (!schedule.isEnabled()) {
+                continue;
+            }
+
+            String cron = crons.get(schedule.getName());
+            JobKey jobKey = new JobKey(schedule.getName(), GROUP);
+            boolean exists = existing.remove(jobKey);
+            if (exists) {
+                JobDetail current = scheduler.getJobDetail(jobKey);
+                Trigger trigger = scheduler.getTrigger(new TriggerKey(schedule.getName(), GROUP));
+                // 版本相同且错开后的时刻不变时无需处理，新增同 cron 的计划会改变其他计划的时刻
+                if (current != null && current.getJobDataMap().getLong(KEY_VERSION) == schedule.getVersion()
+                        && trigger instanceof CronTrigger && cron.equals(((CronTrigger) trigger).getCronExpression())) {
+                    continue;
+                }
+            }
+
+            try {
+                JobDetail job = buildJob(schedule);
+                Trigger trigger = buildTrigger(schedule, cron);
+                scheduler.scheduleJob(job, Collections.singleton(trigger), true);
+                if (exists) {
+                    updated++;
+                } else {
+                    added++;
+                }
+            } catch (RuntimeException e) {
+                // cron 表达式有误等，保留原有计划
+                log.error("定时计划 {} 配置有误: {}", schedule.getName(), e.getMessage());
+            }
+        }
+
+        for (JobKey key : existing) {
+            scheduler.deleteJob(key);
+            removed++;
+        }
+
+        if (added + updated + removed > 0) {
+            log.info("定时计划已更新: 新增 {}, 更新 {}, 删除 {}", added, updated, removed);
+            long duration = strToInt(getProperty("schedule.estimatedDuration", "60000"), 60000);
+            int[] counts = TriggerSpreader.profile(crons.values(), duration, now(), MS_HOUR, MS_MINUTE);
+            lastProfile = TriggerSpreader.report(counts, MS_MINUTE);
+            log.info("未来一小时的并发分布 {}", lastProfile);
+        }
+        return new int[]{added, updated, removed};
+    }
+
+    private JobDetail buildJob(Schedule schedule) {
+        JobBuilder builder = JobBuilder.newJob(Job.class)
+                .withIdentity(schedule.getName(), GROUP)
+                .storeDurably()
+                .requestRecovery()
+                .usingJobData(KEY_VERSION, schedule.getVersion());
+        if (!isEmpty(schedule.getCd())) {
+            builder.usingJobData("cd", schedule.getCd());
+        }
+        if (!isEmpty(schedule.getParams())) {
+            builder.usingJobData("params", schedule.getParams());
+        }
+        if (!isEmpty(schedule.getDataset())) {
+            builder.usingJobData("dataset", schedule.getDataset());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 最近一次更新计划后的并发分布报告，按分钟统计一小时
+     *
+     * @return 报告文本
+     */
+    public String getProfile() {
+        return lastProfile;
+    }
+
+    private Trigger buildTrigger(Schedule schedule, String cron) {
+        return TriggerBuilder.newTrigger()
+                .withIdentity(schedule.getName(), GROUP)
+                .withPriority(schedule.getPriority())
+                .withSchedule(CronScheduleBuilder.cronSchedule(cron)
+                        .withMisfireHandlingInstructionDoNothing())
+                .build();
+    }
+
+    /**
+     * 定期检查数据库计划的任务
+     */
+    @DisallowConcurrentExecution
+    public static class ScheduleReloadJob extends org.springframework.scheduling.quartz.QuartzJobBean {
+        @Autowired
+        private ScheduleLoader loader;
+
+        @Override
+        protected void executeInternal(JobExecutionContext context) throws JobExecutionException {
+            try {
+                loader.reload();
+            } catch (Exception e) {
+                log.warn("加载数据库定时计划失败: " + e.getMessage());
+            }
+        }
+    }
+}
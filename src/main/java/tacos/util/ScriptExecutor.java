@@ -7,13 +7,21 @@ import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.remote.Command;
 import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.http.HttpMethod;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.springframework.util.FileCopyUtils;
+import tacos.model.BlockProfile;
+import tacos.model.BrowserSession;
+import tacos.model.NetworkProfile;
 import tacos.model.ScriptResult;
 import tacos.model.ScriptStep;
 
 import java.io.File;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.nio.file.Files;
 import java.time.Duration;
@@ -21,6 +29,7 @@ import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 import static tacos.model.ScriptStep.*;
 import static tacos.util.Util.*;
@@ -48,9 +57,26 @@ public class ScriptExecutor {
     private static final String ERROR_MISS_START_MARKER = "The end marker before start marker";
     private static final String ERROR_INVALID_ACTION = "Invalid action, only [open, select, check, fill, click, none] allowed";
     private static final String CONFIG_DRIVER = "webdriver.chrome.driver";
+    private static final String CDP_EXECUTE = "executeCdpCommand";
+    public static final String CACHE_MIXED = "mixed";
+    public static final String CACHE_COLD = "cold";
+    public static final String CACHE_WARM = "warm";
+    public static final String RUN_MONITOR = "monitor";
+    public static final String RUN_LOAD = "load";
+    private static final Metrics.Timer WAIT_TIMER = Metrics.timer("ete_wait_duration_seconds");
+    private static final Metrics.Counter WAIT_TIMEOUTS = Metrics.counter("ete_wait_timeouts_total");
 
     private boolean capture = false;
+    private long thinkTime;
     private String dataFolder;
+    private String tag;
+    private String runType = RUN_MONITOR;
+    private String sessionKey;
+    private boolean cdpDefined;
+    private String blockProfile = ResourceBlocker.NONE;
+    private String blockScriptId;
+    private NetworkProfile networkProfile;
+    private boolean throttled;
     private final ChromeDriver driver;
 
     private ScriptResult result = new ScriptResult();
@@ -75,10 +101,21 @@ public class ScriptExecutor {
      * @see #quit()
      */
     public static ScriptExecutor getInstance() {
+        return getInstance(false);
+    }
+
+    /**
+     * 获取实例，见 {@link #getInstance()}
+     *
+     * @param headless 无界面运行，用于负载测试等同时运行大量浏览器的场景
+     * @return 返回 ScriptExecutor 实例，失败返回 null
+     */
+    public static ScriptExecutor getInstance(boolean headless) {
         try {
-            return new ScriptExecutor();
+            return new ScriptExecutor(headless);
         } catch (Exception e) {
             log.error("launch Chrome error: " + e.getMessage());
+            Metrics.counter("ete_browser_launch_errors_total").inc();
             return null;
         }
     }
@@ -87,10 +124,19 @@ public class ScriptExecutor {
      * Better use getInstance()
      */
     public ScriptExecutor() {
+        this(false);
+    }
+
+    /**
+     * Better use getInstance(boolean)
+     *
+     * @param headless 无界面运行
+     */
+    public ScriptExecutor(boolean headless) {
         String driverPath;
         URL url = ScriptResult.class.getResource("");
-        String protocol = url.getProtocol();
-        if ("jar".equals(protocol)) {
+        // native 可执行文件中没有类目录，使用配置的驱动地址
+        if (url != null && "jar".equals(url.getProtocol())) {
             driverPath = getAppPath() + "chromedriver.exe";
         } else {
             driverPath = getProperty(CONFIG_DRIVER, "src/main/resources/chromedriver.exe");
@@ -98,10 +144,15 @@ public class ScriptExecutor {
         log.warn("Chrome驱动地址: " + driverPath);
         System.setProperty(CONFIG_DRIVER, driverPath);
         ChromeOptions chromeOptions = new ChromeOptions();
+        if (headless) {
+            chromeOptions.addArguments("--headless", "--disable-gpu", "--window-size=1920,1080");
+        }
 
         driver = new ChromeDriver(chromeOptions);
         // driver.manage().timeouts().implicitlyWait(500, TimeUnit.MICROSECONDS);
-        driver.manage().window().maximize();
+        if (!headless) {
+            driver.manage().window().maximize();
+        }
     }
 
     /**
@@ -118,6 +169,93 @@ public class ScriptExecutor {
         }
     }
 
+    /**
+     * @return 浏览器当前持有的登录会话，没有返回 null，见 {@link SessionCache}
+     */
+    public String getSessionKey() {
+        return sessionKey;
+    }
+
+    public void setSessionKey(String sessionKey) {
+        this.sessionKey = sessionKey;
+    }
+
+    /**
+     * 导出当前站点的 Cookie、localStorage 和 sessionStorage
+     *
+     * @return 登录会话，出错返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public BrowserSession exportSession() {
+        try {
+            BrowserSession session = new BrowserSession();
+            session.setUrl(driver.getCurrentUrl());
+            for (Cookie cookie : driver.manage().getCookies()) {
+                Map<String, Object> map = new HashMap<>();
+                map.put("name", cookie.getName());
+                map.put("value", cookie.getValue());
+                map.put("domain", cookie.getDomain());
+                map.put("path", cookie.getPath());
+                map.put("expiry", cookie.getExpiry() == null ? null : cookie.getExpiry().getTime());
+                map.put("secure", cookie.isSecure());
+                map.put("httpOnly", cookie.isHttpOnly());
+                map.put("sameSite", cookie.getSameSite());
+                session.getCookies().add(map);
+            }
+            String script = "var r = {}, s = window[arguments[0]]; for (var i = 0; i < s.length; i++) { r[s.key(i)] = s.getItem(s.key(i)); } return r;";
+            session.setLocalStorage((Map<String, String>) driver.executeScript(script, "localStorage"));
+            session.setSessionStorage((Map<String, String>) driver.executeScript(script, "sessionStorage"));
+            return session;
+        } catch (WebDriverException | ClassCastException e) {
+            log.warn("导出登录会话出错: " + getDriverError(e));
+            return null;
+        }
+    }
+
+    /**
+     * 把登录会话恢复到当前浏览器，然后打开探测页面检查是否仍然有效
+     *
+     * @param session       登录会话
+     * @param probeUrl      探测页面，为空时使用登录后所在页面
+     * @param probeSelector 登录后才有的元素 (CSS selector)，为空时不检查
+     * @param loginPattern  登录页地址的正则表达式，探测时跳转到登录页表示会话无效
+     * @return 会话有效返回 true
+     */
+    public boolean restoreSession(BrowserSession session, String probeUrl, String probeSelector, String loginPattern) {
+        try {
+            driver.get(session.getUrl());
+            driver.manage().deleteAllCookies();
+            for (Map<String, Object> map : session.getCookies()) {
+                Object expiry = map.get("expiry");
+                Cookie cookie = new Cookie.Builder(toStr(map.get("name")), toStr(map.get("value")))
+                        .domain((String) map.get("domain"))
+                        .path((String) map.get("path"))
+                        .expiresOn(expiry instanceof Number ? new Date(((Number) expiry).longValue()) : null)
+                        .isSecure(Boolean.TRUE.equals(map.get("secure")))
+                        .isHttpOnly(Boolean.TRUE.equals(map.get("httpOnly")))
+                        .sameSite((String) map.get("sameSite"))
+                        .build();
+                try {
+                    driver.manage().addCookie(cookie);
+                } catch (WebDriverException e) {
+                    log.debug("恢复 Cookie {} 出错: {}", cookie.getName(), getDriverError(e));
+                }
+            }
+            driver.executeScript("var l = arguments[0], s = arguments[1];"
+                            + " for (var k in l) { localStorage.setItem(k, l[k]); } for (var k in s) { sessionStorage.setItem(k, s[k]); }",
+                    session.getLocalStorage(), session.getSessionStorage());
+
+            driver.get(isEmpty(probeUrl) ? session.getUrl() : probeUrl);
+            if (!isEmpty(loginPattern) && Pattern.compile(loginPattern).matcher(driver.getCurrentUrl()).find()) {
+                return false;
+            }
+            return isEmpty(probeSelector) || !driver.findElements(By.cssSelector(probeSelector)).isEmpty();
+        } catch (WebDriverException e) {
+            log.warn("恢复登录会话出错: " + getDriverError(e));
+            return false;
+        }
+    }
+
     /**
      * 执行 Steps 并返回本次脚本运行结果 <br/>
      * Execute the script and return the result
@@ -130,11 +268,22 @@ public class ScriptExecutor {
             return null;
         }
 
+        this.tag = tag;
+        this.capture = false;
+        result = new ScriptResult();
+        networkThrottling();
+        resourceBlocking();
+        String network = result.networkProfile;
+        String block = result.blockProfile;
+        String cacheMode = prepareCache(steps);
+
         this.capture = capture;
         lastStart = null;
         result = new ScriptResult();
+        result.networkProfile = network;
+        result.blockProfile = block;
+        result.cacheMode = cacheMode;
         result.start = new Date();
-        networkThrottling();
         dataFolder = ProjectUtil.getConfig("data_dir")
                 + now(FORMAT_DATE) + File.separator
                 + getValidFilename(tag) + File.separator
@@ -144,14 +293,135 @@ public class ScriptExecutor {
             new File(dataFolder).mkdirs();
         }
 
+        runSteps(steps);
+
+        result.end = new Date();
+        Metrics.timer("ete_run_duration_seconds", "tag", tag, "cache", cacheMode, "run", runType).recordMillis(diffTime(result.start, result.end));
+        Metrics.counter("ete_runs_total", "tag", tag, "result", isEmpty(result.errorMessage) ? "ok" : "error", "run", runType).inc();
+        if (RUN_MONITOR.equals(runType)) {
+            ResourceBlocker.record(tag, result.blockProfile, diffTime(result.start, result.end));
+        }
+        return result;
+    }
+
+    private void runSteps(List<ScriptStep> steps) {
         for (index = 0; index < steps.size(); index++) {
             if (executeStep(steps.get(index))) {
                 break;
             }
+            // 思考时间只加在测量区间 (start ~ end marker) 之外，不计入测量值
+            if (thinkTime > 0 && lastStart == null && index < steps.size() - 1) {
+                try {
+                    Thread.sleep(thinkTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
         }
+    }
 
-        result.end = new Date();
-        return result;
+    /**
+     * 运行类型，作为运行和测量指标的 run 标签，负载测试 ({@link LoadRunner}) 的运行与监控运行分开统计，
+     * 也不计入拦截对比 ({@link ResourceBlocker#report()})；模板的 cache.mode、block.profile 等配置仍按模板功能代码读取
+     *
+     * @param runType {@link #RUN_MONITOR} 或 {@link #RUN_LOAD}
+     */
+    public void setRunType(String runType) {
+        this.runType = runType;
+    }
+
+    /**
+     * 步骤之间的思考时间，模拟真实用户的操作间隔，见 {@link LoadRunner}
+     *
+     * @param thinkTime 单位 ms，0 为不等待
+     */
+    public void setThinkTime(long thinkTime) {
+        this.thinkTime = thinkTime;
+    }
+
+    /**
+     * 按缓存模式准备浏览器，模式由 cache.mode.模板 (默认 cache.mode) 指定，记录在 {@link ScriptResult#cacheMode}：<ul>
+     * <li>mixed: 不处理，缓存状态取决于浏览器之前运行过什么</li>
+     * <li>cold: 通过 DevTools 清除 HTTP 缓存，以及当前页面和脚本打开的各站点的 cache.cold.storageTypes 存储 (默认保留
+     * Cookie 和 localStorage，以免丢失登录状态)</li>
+     * <li>warm: 先依次打开脚本中 open 步骤的页面 cache.warmup 遍预热，只导航加载资源，不执行点击、填写等操作，不会重复提交业务数据</li>
+     * </ul>
+     * 登录模板 ({@link ProjectUtil#TEMPLATE_LOGIN}) 不处理，总是 mixed
+     *
+     * @param steps 脚本
+     * @return 实际使用的模式，cold 清除失败时为 mixed
+     */
+    protected String prepareCache(List<ScriptStep> steps) {
+        if (ProjectUtil.TEMPLATE_LOGIN.equals(tag)) {
+            return CACHE_MIXED;
+        }
+        String mode = ProjectUtil.getConfig("cache.mode." + tag, ProjectUtil.getConfig("cache.mode", CACHE_MIXED));
+        if (CACHE_COLD.equals(mode)) {
+            try {
+                cdp("Network.clearBrowserCache", Collections.emptyMap());
+                String types = ProjectUtil.getConfig("cache.cold.storageTypes", "service_workers,cache_storage,appcache,indexeddb,websql,shader_cache");
+                for (String origin : origins(steps)) {
+                    cdp("Storage.clearDataForOrigin", ImmutableMap.of("origin", origin, "storageTypes", types));
+                }
+                return CACHE_COLD;
+            } catch (Exception e) {
+                log.warn("清除缓存失败 " + e.getMessage());
+                return CACHE_MIXED;
+            }
+        }
+        if (CACHE_WARM.equals(mode)) {
+            int iterations = strToInt(ProjectUtil.getConfig("cache.warmup", "1"), 1);
+            Set<String> pages = pages(steps);
+            try (Tracer.Span span = Tracer.start("warmup").attr("iterations", iterations)) {
+                span.attr("pages", pages.size());
+                for (int i = 0; i < iterations; i++) {
+                    for (String page : pages) {
+                        try {
+                            driver.get(page);
+                        } catch (Exception e) {
+                            log.debug("预热页面 {} 出错: {}", page, e.getMessage());
+                        }
+                    }
+                }
+            }
+            return CACHE_WARM;
+        }
+        return CACHE_MIXED;
+    }
+
+    /**
+     * 脚本中 open 步骤打开的页面，按出现顺序去重
+     */
+    private static Set<String> pages(List<ScriptStep> steps) {
+        Set<String> pages = new LinkedHashSet<>();
+        for (ScriptStep step : steps) {
+            if (ACTION_OPEN.equals(step.action) && !isEmpty(step.actionValue)) {
+                pages.add(step.actionValue);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * 当前页面和脚本打开的站点
+     */
+    private Set<String> origins(List<ScriptStep> steps) {
+        Set<String> origins = new LinkedHashSet<>();
+        List<String> urls = new ArrayList<>();
+        urls.add(driver.getCurrentUrl());
+        urls.addAll(pages(steps));
+        for (String url : urls) {
+            try {
+                URL u = new URL(url);
+                if (u.getProtocol().startsWith("http")) {
+                    origins.add(u.getProtocol() + "://" + u.getHost() + (u.getPort() < 0 ? "" : ":" + u.getPort()));
+                }
+            } catch (Exception ignored) {
+                // about:blank, data: 等没有站点
+            }
+        }
+        return origins;
     }
 
     /**
@@ -162,6 +432,9 @@ public class ScriptExecutor {
      */
     private boolean executeStep(ScriptStep step) {
         log.debug("开始步骤: " + step);
+        long start = System.nanoTime();
+        String errors = result.errorMessage;
+        Tracer.Span span = Tracer.start("step " + step.name).attr("action", step.action).attr("step.index", index);
 
         if (MARKER_START.equals(step.marker)) {
             lastStart = new Date();
@@ -207,12 +480,17 @@ public class ScriptExecutor {
                 break;
         }
 
+        Metrics.timer("ete_step_duration_seconds", "action", step.action).record(System.nanoTime() - start);
         if (MARKER_END.equals(step.marker) && !stop) {
             setMeasureTime(step);
         }
         if (capture) {
             screenCapture(step);
         }
+        if (!equal(errors, result.errorMessage)) {
+            span.error(right(result.errorMessage, result.errorMessage.length() - toStr(errors).length()).trim());
+        }
+        span.attr("stop", stop).end();
         log.debug("结束步骤: " + step.name);
         return stop;
     }
@@ -291,12 +569,12 @@ public class ScriptExecutor {
 
         for (int i = 0; i < selectors.length; i++) {
             final int index = i;
-            executor.submit(() -> {
+            executor.submit(Tracer.wrap(() -> {
                 long start = System.currentTimeMillis();
                 elements[index] = waitElement(step.selectorType, selectors[index], step.timeout);
                 durations[index] = System.currentTimeMillis() - start;
                 latch.countDown();
-            });
+            }));
         }
         try {
             latch.await();
@@ -333,12 +611,12 @@ public class ScriptExecutor {
 
         for (int i = 0; i < selectors.length; i++) {
             final int index = i;
-            executor.submit(() -> {
+            executor.submit(Tracer.wrap(() -> {
                 long start = System.currentTimeMillis();
                 elements[index] = waitElement(step.selectorType, selectors[index], step.timeout);
                 durations[index] = System.currentTimeMillis() - start;
                 latch.countDown();
-            });
+            }));
         }
         try {
             latch.await();
@@ -378,14 +656,18 @@ public class ScriptExecutor {
             return;
         }
 
-        try {
+        long start = System.nanoTime();
+        try (Tracer.Span span = Tracer.start("screenshot")) {
             String filename = dataFolder + getValidFilename(step.name) + "_" + now(FORMAT_SHORT_TIME) + ".png";
+            span.attr("file", filename);
             File srcFile = driver.getScreenshotAs(OutputType.FILE);
             File dstFile = new File(filename);
             FileCopyUtils.copy(srcFile, dstFile);
             log.debug("截屏成功 " + filename);
             Files.delete(srcFile.toPath());
+            Metrics.timer("ete_screenshot_duration_seconds").record(System.nanoTime() - start);
         } catch (Exception e) {
+            Metrics.counter("ete_screenshot_errors_total").inc();
             setError(step, "capture failure " + getDriverError(e));
             log.warn("截屏失败 " + e.getMessage());
         }
@@ -404,6 +686,9 @@ public class ScriptExecutor {
         }
 
         long duration = diffTime(lastStart, now());
+        StartupTimeline.measured();
+        Metrics.timer("ete_measure_seconds", "tag", tag, "measure", String.valueOf(step.measure), "cache", result.cacheMode, "run", runType)
+                .recordMillis(duration);
         if (step.measure == MEASURE_TIME_1) {
             result.measure_time_1 = duration / 1000f;
             result.sampleTime_1 = now();
@@ -507,6 +792,8 @@ public class ScriptExecutor {
      * @return 返回等待并查找到的页面元素，若错误或异常，返回 null
      */
     protected WebElement waitElement(ScriptStep step) {
+        long start = System.nanoTime();
+        Tracer.Span span = Tracer.start("wait").attr("selector", step.selectorValue);
         try {
             WebDriverWait wait = new WebDriverWait(driver, step.timeout);
             wait.pollingEvery(Duration.ofMillis(20));
@@ -524,9 +811,14 @@ public class ScriptExecutor {
                     return null;
             }
         } catch (TimeoutException e) {
+            WAIT_TIMEOUTS.inc();
+            span.error("timeout");
             setError(step, "wait element timeout");
             log.warn("查找元素超时: " + e.getMessage());
             return null;
+        } finally {
+            WAIT_TIMER.record(System.nanoTime() - start);
+            span.end();
         }
     }
 
@@ -539,6 +831,8 @@ public class ScriptExecutor {
      * @return 找到返回 元素，否则返回 null
      */
     protected WebElement waitElement(String selectorType, String selectorValue, long timeout) {
+        long start = System.nanoTime();
+        Tracer.Span span = Tracer.start("wait").attr("selector", selectorValue);
         try {
             WebDriverWait wait = new WebDriverWait(driver, timeout);
             wait.pollingEvery(Duration.ofMillis(20));
@@ -555,8 +849,13 @@ public class ScriptExecutor {
                     return null;
             }
         } catch (TimeoutException e) {
+            WAIT_TIMEOUTS.inc();
+            span.error("timeout");
             log.warn("查找元素超时: " + e.getMessage());
             return null;
+        } finally {
+            WAIT_TIMER.record(System.nanoTime() - start);
+            span.end();
         }
     }
 
@@ -630,6 +929,7 @@ public class ScriptExecutor {
     protected boolean doOpen(ScriptStep step) {
         try {
             driver.get(step.actionValue);
+            traceNavigation(step.actionValue);
             return false;
         } catch (Exception e) {
             setError(step, "open error: " + getDriverError(e));
@@ -638,6 +938,34 @@ public class ScriptExecutor {
         }
     }
 
+    /**
+     * 追踪开启时，把页面导航的 HTTP 各阶段 (Navigation Timing) 记录为当前步骤的子 span
+     *
+     * @param url 打开的地址
+     */
+    private void traceNavigation(String url) {
+        if (!Tracer.current().isRecording()) {
+            return;
+        }
+        try {
+            String[] timing = String.valueOf(driver.executeScript("var t = performance.timing; return [t.navigationStart, "
+                    + "t.domainLookupStart, t.connectStart, t.requestStart, t.responseStart, t.responseEnd, t.loadEventEnd].join(',');"))
+                    .split(",");
+            long[] ns = new long[timing.length];
+            for (int i = 0; i < ns.length; i++) {
+                ns[i] = Long.parseLong(timing[i]) * 1_000_000;
+            }
+            Tracer.Span http = Tracer.start("http GET", ns[0]).attr("http.url", url);
+            Tracer.start("dns", ns[1]).end(ns[2]);
+            Tracer.start("connect", ns[2]).end(ns[3]);
+            Tracer.start("request", ns[3]).end(ns[4]);
+            Tracer.start("response", ns[4]).end(ns[5]);
+            http.end(Math.max(ns[5], ns[6]));
+        } catch (Exception e) {
+            log.debug("读取导航耗时出错: " + e.getMessage());
+        }
+    }
+
     /**
      * 设置错误信息
      *
@@ -645,6 +973,7 @@ public class ScriptExecutor {
      * @param s    错误内容
      */
     private void setError(ScriptStep step, String s) {
+        Metrics.counter("ete_step_errors_total", "action", toStr(step.action)).inc();
         String buf = now(FORMAT_DATETIME) + ": Step [" + step.name + "] " + s;
         if (isEmpty(result.errorMessage)) {
             result.errorMessage = buf;
@@ -671,25 +1000,103 @@ public class ScriptExecutor {
     }
 
     /**
-     * 模拟网络限速
+     * 下次运行使用的网络条件 (见 {@link NetworkMatrix})，为 null 时使用 network.throttling 的全局配置
+     *
+     * @param networkProfile 网络条件
+     */
+    public void setNetworkProfile(NetworkProfile networkProfile) {
+        this.networkProfile = networkProfile;
+    }
+
+    /**
+     * 模拟网络限速，使用 {@link #setNetworkProfile(NetworkProfile)} 指定的网络条件，没有指定时使用全局配置，
+     * 全局未开启时取消浏览器之前运行留下的限速
      */
     protected void networkThrottling() {
-        if (!strToBoolean(ProjectUtil.getConfig("network.throttling"))) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("offline", false);
+        if (networkProfile != null) {
+            map.put("latency", networkProfile.getLatency());
+            map.put("download_throughput", networkProfile.getDownload());
+            map.put("upload_throughput", networkProfile.getUpload());
+        } else if (ProjectUtil.getConfigBoolean("network.throttling", false)) {
+            map.put("latency", ProjectUtil.getConfigInt("network.latency", 500));
+            map.put("download_throughput", ProjectUtil.getConfigInt("network.download", 1000 * 1000));
+            map.put("upload_throughput", ProjectUtil.getConfigInt("network.upload", 500 * 1000));
+        } else {
+            if (throttled) {
+                try {
+                    driver.getCommandExecutor().execute(new Command(driver.getSessionId(), "deleteNetworkConditions"));
+                    throttled = false;
+                } catch (Exception e) {
+                    log.warn("取消限速失败 " + e.getMessage());
+                }
+            }
+            result.networkProfile = throttled ? "error" : "none";
             return;
         }
 
-        Map<String, Object> map = new HashMap<>();
-        map.put("offline", false);
-        map.put("latency", ProjectUtil.getConfigInt("network.latency", 500));
-        map.put("download_throughput", ProjectUtil.getConfigInt("network.download", 1000 * 1000));
-        map.put("upload_throughput", ProjectUtil.getConfigInt("network.upload", 500 * 1000));
         CommandExecutor executor = driver.getCommandExecutor();
         try {
             executor.execute(
                     new Command(driver.getSessionId(), "setNetworkConditions", ImmutableMap.of("network_conditions", ImmutableMap.copyOf(map)))
             );
+            throttled = true;
+            result.networkProfile = networkProfile == null ? "default" : networkProfile.getName();
         } catch (Exception e) {
             log.warn("限速失败 " + e.getMessage());
+            result.networkProfile = "error";
+        }
+    }
+
+    /**
+     * 按模板选择的配置拦截资源 (见 {@link ResourceBlocker})，浏览器已经是该配置时不再设置
+     */
+    protected void resourceBlocking() {
+        String name = ResourceBlocker.select(tag);
+        if (!name.equals(blockProfile)) {
+            try {
+                BlockProfile profile = ResourceBlocker.getProfile(name);
+                blockProfile = null;
+                cdp("Network.enable", Collections.emptyMap());
+                cdp("Network.setBlockedURLs", ImmutableMap.of("urls", ResourceBlocker.patterns(profile)));
+                if (blockScriptId != null) {
+                    cdp("Page.removeScriptToEvaluateOnNewDocument", ImmutableMap.of("identifier", blockScriptId));
+                    blockScriptId = null;
+                }
+                String stub = ResourceBlocker.stubScript(profile);
+                if (!stub.isEmpty()) {
+                    blockScriptId = toStr(cdp("Page.addScriptToEvaluateOnNewDocument", ImmutableMap.of("source", stub)).get("identifier"));
+                }
+                blockProfile = name;
+            } catch (Exception e) {
+                log.warn("资源拦截失败 " + e.getMessage());
+            }
+        }
+        result.blockProfile = blockProfile == null ? "error" : blockProfile;
+    }
+
+    /**
+     * 执行 DevTools 命令，使用 chromedriver 的 /goog/cdp/execute 接口
+     *
+     * @param method 命令，例如 Network.setBlockedURLs
+     * @param params 参数
+     * @return 命令的返回值
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> cdp(String method, Map<String, ?> params) throws Exception {
+        CommandExecutor executor = driver.getCommandExecutor();
+        if (!cdpDefined) {
+            Method define = HttpCommandExecutor.class.getDeclaredMethod("defineCommand", String.class, CommandInfo.class);
+            define.setAccessible(true);
+            define.invoke(executor, CDP_EXECUTE, new CommandInfo("/session/:sessionId/goog/cdp/execute", HttpMethod.POST));
+            cdpDefined = true;
+        }
+        Response response = executor.execute(new Command(driver.getSessionId(), CDP_EXECUTE, ImmutableMap.of("cmd", method, "params", params)));
+        if (response.getStatus() != null && response.getStatus() != 0) {
+            throw new WebDriverException(method + ": " + response.getValue());
         }
+        Object value = response.getValue();
+        return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,153 @@
+package tacos.util;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import tacos.model.BrowserSession;
+import tacos.model.ScriptResult;
+import tacos.model.ScriptStep;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static tacos.util.Util.*;
+
+/**
+ * 登录会话缓存 - Login session cache
+ * <p>
+ * 登录 (LGN 模板) 成功后保存浏览器的 Cookie、localStorage 和 sessionStorage，session.ttl ms 内：<ul>
+ * <li>已经持有该会话的浏览器 (浏览器池复用) 直接运行，不再登录</li>
+ * <li>其他浏览器恢复会话后打开探测页面 (session.probeUrl)，跳转到登录页 (session.loginPattern) 或者缺少登录后才有的元素
+ * (session.probeSelector) 时视为无效，重新登录</li>
+ * </ul>
+ * 会话按替换占位符后的登录脚本区分，不同账号互不影响。运行出错时调用 {@link #invalidate(ScriptExecutor)}，下次重新登录。<br/>
+ * 配置 session.file 时会话写入该文件，重启后继续使用；文件中包含登录凭据，需限制访问权限
+ */
+@Slf4j
+@Component
+public class SessionCache {
+    public static final String MODE_REUSED = "reused";
+    public static final String MODE_RESTORED = "restored";
+    public static final String MODE_LOGIN = "login";
+    public static final String MODE_FAILED = "failed";
+
+    private static final Gson GSON = new Gson();
+
+    private final Map<String, BrowserSession> sessions = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * 确保浏览器处于登录状态，优先使用缓存的会话，无效时执行登录脚本
+     *
+     * @param executor   浏览器
+     * @param loginSteps 替换占位符后的登录脚本
+     * @return reused 浏览器已持有会话，restored 恢复了缓存的会话，login 执行了登录，failed 登录出错
+     */
+    public String login(ScriptExecutor executor, List<ScriptStep> loginSteps) {
+        String mode = doLogin(executor, loginSteps);
+        Metrics.counter("ete_login_total", "mode", mode).inc();
+        return mode;
+    }
+
+    private String doLogin(ScriptExecutor executor, List<ScriptStep> loginSteps) {
+        boolean enabled = strToBoolean(getProperty("session.enabled", "false"));
+        String key = enabled ? md5(ScriptStep.toJSON(loginSteps, false)) : null;
+        if (enabled) {
+            ensureLoaded();
+            BrowserSession session = sessions.get(key);
+            if (session != null && session.getExpireAt() > System.currentTimeMillis()) {
+                if (key.equals(executor.getSessionKey())) {
+                    return MODE_REUSED;
+                }
+                if (executor.restoreSession(session, getProperty("session.probeUrl", ""),
+                        getProperty("session.probeSelector", ""), getProperty("session.loginPattern", "login"))) {
+                    executor.setSessionKey(key);
+                    return MODE_RESTORED;
+                }
+                log.info("缓存的登录会话已失效，重新登录");
+                sessions.remove(key, session);
+                save();
+            }
+        }
+
+        executor.setSessionKey(null);
+        ScriptResult result = executor.execute(loginSteps, ProjectUtil.TEMPLATE_LOGIN, false);
+        if (result == null || !isEmpty(result.errorMessage)) {
+            return MODE_FAILED;
+        }
+        if (enabled) {
+            BrowserSession session = executor.exportSession();
+            if (session != null) {
+                session.setExpireAt(System.currentTimeMillis() + strToInt(getProperty("session.ttl", "1800000"), 1800000));
+                sessions.put(key, session);
+                executor.setSessionKey(key);
+                save();
+            }
+        }
+        return MODE_LOGIN;
+    }
+
+    /**
+     * 浏览器的会话可能已经失效，例如运行出错，删除缓存的会话，下次重新登录
+     *
+     * @param executor 浏览器
+     */
+    public void invalidate(ScriptExecutor executor) {
+        String key = executor.getSessionKey();
+        executor.setSessionKey(null);
+        if (key != null && sessions.remove(key) != null) {
+            save();
+        }
+    }
+
+    /**
+     * @return 缓存的会话数量，包括已过期未删除的
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            String file = getProperty("session.file", "");
+            if (!isEmpty(file) && new File(file).exists()) {
+                Type type = new TypeToken<Map<String, BrowserSession>>() {
+                }.getType();
+                try {
+                    Map<String, BrowserSession> saved = GSON.fromJson(stringFromFile(file), type);
+                    if (saved != null) {
+                        long now = System.currentTimeMillis();
+                        saved.forEach((key, session) -> {
+                            if (session.getExpireAt() > now) {
+                                sessions.put(key, session);
+                            }
+                        });
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("读取登录会话文件 {} 出错: {}", file, e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private synchronized void save() {
+        String file = getProperty("session.file", "");
+        if (isEmpty(file)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.getExpireAt() <= now);
+        stringToFile(file, GSON.toJson(sessions));
+    }
+}
@@ -1,59 +1,240 @@
 package tacos.util;
 
+import com.mysql.cj.jdbc.JdbcStatement;
+import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.*;
 import org.springframework.stereotype.Component;
 
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static tacos.util.Util.*;
 
 /**
  * SQL Helper
+ * <p>
+ * 所有查询都通过 PreparedStatement 执行，参数用 ? 绑定，SQL 文本保持不变，由驱动的预编译语句缓存复用
+ * (见 spring.datasource.hikari.data-source-properties.cachePrepStmts)。<br/>
+ * 标量查询只取第一行第一列，不创建 Map，{@link #queryForLong} 和 {@link #queryForDouble} 直接返回基本类型
+ * <p>
+ * 大量写入使用 {@link #batchUpdate} (按 sql.batchSize 分块提交，MySQL 驱动合并为多行 insert，见 rewriteBatchedStatements)
+ * 或 {@link #loadData} (LOAD DATA LOCAL INFILE，数据通过管道边生成边发送)，期间按 sql.progressInterval 输出每秒行数
+ * <p>
+ * {@link #queryForStringCached} 和 {@link #queryCached} 从 {@link QueryCache} 读取结果，通过本类写入的表会使相关结果失效，
+ * sql.cache.enabled=false 时直接查询
+ * <p>
+ * 每次数据库操作按类型计时 (ete_sql_duration_seconds)，连接池和缓存的状态见 {@link Metrics}；在运行中执行时记录为追踪的子 span
  */
 @Component
 @Slf4j
 public class SqlHelper {
+    private static final String OP_QUERY = "query";
+    private static final String OP_UPDATE = "update";
+    private static final String OP_BATCH = "batch";
+    private static final String OP_LOAD = "load";
+    /**
+     * LOAD DATA 中直接拼接的表名和列名
+     */
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z0-9_]+");
+    private static final Map<String, Metrics.Timer> TIMERS = Map.of(
+            OP_QUERY, Metrics.timer("ete_sql_duration_seconds", "op", OP_QUERY),
+            OP_UPDATE, Metrics.timer("ete_sql_duration_seconds", "op", OP_UPDATE),
+            OP_BATCH, Metrics.timer("ete_sql_duration_seconds", "op", OP_BATCH),
+            OP_LOAD, Metrics.timer("ete_sql_duration_seconds", "op", OP_LOAD));
+
     private static JdbcTemplate jdbcTemplate;
+    private static final QueryCache cache = new QueryCache(strToInt(getProperty("sql.cache.maxSize", "1000"), 1000));
 
     @Autowired
     private SqlHelper(JdbcTemplate jdbcTemplate) {
         SqlHelper.jdbcTemplate = jdbcTemplate;
+        registerMetrics(jdbcTemplate.getDataSource());
     }
 
     /**
-     * Query for first column of first record
+     * 注册连接池和查询缓存的指标
      *
-     * @param sql SQL statement
-     * @return first column integer of first record
+     * @param dataSource 数据源
      */
-    public static Integer queryForInt(String sql) {
-        Map<String, Object> map = jdbcTemplate.queryForMap(sql);
-        Object obj = map.values().iterator().next();
-        if (obj == null) {
-            return null;
+    private static void registerMetrics(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            HikariDataSource hikari = (HikariDataSource) dataSource;
+            // 连接池在第一次取连接时才创建
+            Metrics.gauge("ete_jdbc_connections_active", () -> hikari.getHikariPoolMXBean() == null ? 0 : hikari.getHikariPoolMXBean().getActiveConnections());
+            Metrics.gauge("ete_jdbc_connections_idle", () -> hikari.getHikariPoolMXBean() == null ? 0 : hikari.getHikariPoolMXBean().getIdleConnections());
+            Metrics.gauge("ete_jdbc_connections_pending", () -> hikari.getHikariPoolMXBean() == null ? 0 : hikari.getHikariPoolMXBean().getThreadsAwaitingConnection());
+            Metrics.gauge("ete_jdbc_connections_max", hikari::getMaximumPoolSize);
+        }
+        Metrics.gauge("ete_sql_cache_size", cache::size);
+        Metrics.counterOf("ete_sql_cache_hits_total", cache::getHits);
+        Metrics.counterOf("ete_sql_cache_misses_total", cache::getMisses);
+        Metrics.counterOf("ete_sql_cache_evictions_total", cache::getEvictions);
+    }
+
+    /**
+     * 执行数据库操作并计时，出错时按异常类型计数
+     *
+     * @param op     操作类型: query, update, batch, load
+     * @param sql    SQL statement，记录在追踪中
+     * @param action 数据库操作
+     * @param <T>    Type
+     * @return 操作结果
+     */
+    private static <T> T timed(String op, String sql, Supplier<T> action) {
+        long start = System.nanoTime();
+        Tracer.Span span = Tracer.start("db " + op).attr("db.statement", sql);
+        try {
+            return action.get();
+        } catch (RuntimeException e) {
+            Metrics.counter("ete_sql_errors_total", "op", op, "kind", e.getClass().getSimpleName()).inc();
+            span.error(e.getMessage());
+            throw e;
+        } finally {
+            TIMERS.get(op).record(System.nanoTime() - start);
+            span.end();
         }
-        return Integer.parseInt(obj.toString());
+    }
+
+    /**
+     * 只取第一行的语句，驱动不必传输多余的记录
+     *
+     * @param sql  SQL statement
+     * @param args bind parameters
+     * @return PreparedStatementCreator
+     */
+    private static PreparedStatementCreator firstRow(String sql, Object[] args) {
+        return con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setMaxRows(1);
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            return ps;
+        };
+    }
+
+    /**
+     * 执行查询，只处理第一行
+     *
+     * @param sql     SQL statement
+     * @param args    bind parameters
+     * @param handler 第一行的处理，没有记录时不调用
+     */
+    private static void queryFirst(String sql, Object[] args, RowCallbackHandler handler) {
+        timed(OP_QUERY, sql, () -> jdbcTemplate.query(firstRow(sql, args), (ResultSetExtractor<Void>) rs -> {
+            if (rs.next()) {
+                handler.processRow(rs);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Query for first column of first record
+     *
+     * @param sql  SQL statement
+     * @param args bind parameters
+     * @return first column integer of first record, null if no record or the value is null
+     */
+    public static Integer queryForInt(String sql, Object... args) {
+        Integer[] value = {null};
+        queryFirst(sql, args, rs -> {
+            int v = rs.getInt(1);
+            value[0] = rs.wasNull() ? null : v;
+        });
+        return value[0];
+    }
+
+    /**
+     * Query for first column of first record
+     *
+     * @param sql          SQL statement
+     * @param defaultValue value returned if no record or the value is null
+     * @param args         bind parameters
+     * @return first column long of first record
+     */
+    public static long queryForLong(String sql, long defaultValue, Object... args) {
+        long[] value = {defaultValue};
+        queryFirst(sql, args, rs -> {
+            long v = rs.getLong(1);
+            if (!rs.wasNull()) {
+                value[0] = v;
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * Query for first column of first record
+     *
+     * @param sql          SQL statement
+     * @param defaultValue value returned if no record or the value is null
+     * @param args         bind parameters
+     * @return first column double of first record
+     */
+    public static double queryForDouble(String sql, double defaultValue, Object... args) {
+        double[] value = {defaultValue};
+        queryFirst(sql, args, rs -> {
+            double v = rs.getDouble(1);
+            if (!rs.wasNull()) {
+                value[0] = v;
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * 返回数据源，用于需要直接使用 JDBC 的场景，例如流式游标
+     *
+     * @return 数据源
+     */
+    public static DataSource getDataSource() {
+        return jdbcTemplate.getDataSource();
     }
 
     public static String version() {
-        return queryForString("select version()");
+        return queryForStringCached(MS_HOUR, "select version()");
     }
 
     /**
      * Query for single record with single field
      *
-     * @param sql SQL statement
-     * @return first column value of first record
+     * @param sql  SQL statement
+     * @param args bind parameters
+     * @return first column value of first record, null if no record
      */
-    public static String queryForString(String sql) {
-        Map<String, Object> map = jdbcTemplate.queryForMap(sql);
-        Object obj = map.values().iterator().next();
-        if (obj == null) {
-            return null;
-        }
-        return obj.toString();
+    public static String queryForString(String sql, Object... args) {
+        String[] value = {null};
+        queryFirst(sql, args, rs -> value[0] = rs.getString(1));
+        return value[0];
+    }
+
+    /**
+     * Query for first record
+     *
+     * @param sql       SQL statement
+     * @param rowMapper RowMapper
+     * @param args      bind parameters
+     * @param <T>       Type
+     * @return first record, null if no record
+     */
+    public static <T> T queryForObject(String sql, RowMapper<T> rowMapper, Object... args) {
+        List<T> list = timed(OP_QUERY, sql, () -> jdbcTemplate.query(firstRow(sql, args), rowMapper));
+        return list.isEmpty() ? null : list.get(0);
     }
 
     /**
@@ -67,14 +248,318 @@ public class SqlHelper {
      *
      * @param sql       SQL statement
      * @param rowMapper RowMapper
+     * @param args      bind parameters
      * @param <T>       Type
      * @return List Object Of T
      */
-    public static <T> List<T> query(String sql, RowMapper<T> rowMapper) {
-        return jdbcTemplate.query(sql, rowMapper);
+    public static <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+        return timed(OP_QUERY, sql, () -> jdbcTemplate.query(sql, rowMapper, args));
+    }
+
+    /**
+     * Run insert, update or delete statement
+     *
+     * @param sql  SQL statement
+     * @param args bind parameters
+     * @return affected rows
+     */
+    public static int update(String sql, Object... args) {
+        int affected = timed(OP_UPDATE, sql, () -> jdbcTemplate.update(sql, args));
+        invalidate(sql);
+        return affected;
     }
 
     public static void execute(String sql) {
-        jdbcTemplate.execute(sql);
+        timed(OP_UPDATE, sql, () -> {
+            jdbcTemplate.execute(sql);
+            return null;
+        });
+        invalidate(sql);
+    }
+
+    /**
+     * Query for single record with single field, read through the cache
+     *
+     * @param ttl  time to live of the result, ms
+     * @param sql  SQL statement
+     * @param args bind parameters
+     * @return first column value of first record, null if no record
+     */
+    public static String queryForStringCached(long ttl, String sql, Object... args) {
+        if (!isCacheEnabled()) {
+            return queryForString(sql, args);
+        }
+        return cache.get(sql, args, ttl, () -> queryForString(sql, args));
+    }
+
+    /**
+     * Run SQL and return List Object, read through the cache
+     *
+     * @param ttl       time to live of the result, ms
+     * @param sql       SQL statement
+     * @param rowMapper RowMapper
+     * @param args      bind parameters
+     * @param <T>       Type
+     * @return unmodifiable List Object Of T, shared by all callers
+     */
+    public static <T> List<T> queryCached(long ttl, String sql, RowMapper<T> rowMapper, Object... args) {
+        if (!isCacheEnabled()) {
+            return Collections.unmodifiableList(query(sql, rowMapper, args));
+        }
+        return cache.get(sql, args, ttl, () -> Collections.unmodifiableList(query(sql, rowMapper, args)));
+    }
+
+    /**
+     * 查询缓存，用于查看命中率或手动清除
+     *
+     * @return QueryCache
+     */
+    public static QueryCache getCache() {
+        return cache;
+    }
+
+    private static boolean isCacheEnabled() {
+        return strToBoolean(getProperty("sql.cache.enabled", "true"));
+    }
+
+    /**
+     * 写入后使相关表的缓存结果失效
+     *
+     * @param sql 写入语句
+     */
+    private static void invalidate(String sql) {
+        int count = cache.invalidate(QueryCache.tables(sql));
+        if (count > 0) {
+            log.debug("{} 个缓存结果失效: {}", count, sql);
+        }
+    }
+
+    /**
+     * 批量执行，按 sql.batchSize 分块
+     *
+     * @param sql  insert, update or delete statement with ? placeholders
+     * @param rows bind parameters of each row
+     * @return affected rows
+     */
+    public static long batchUpdate(String sql, Stream<Object[]> rows) {
+        try (Stream<Object[]> stream = rows) {
+            return batchUpdate(sql, stream.iterator(), strToInt(getProperty("sql.batchSize", "1000"), 1000));
+        }
+    }
+
+    /**
+     * 批量执行，每 batchSize 行执行一次批处理并提交，行数据逐个读取，不会全部进入内存
+     *
+     * @param sql       insert, update or delete statement with ? placeholders
+     * @param rows      bind parameters of each row
+     * @param batchSize rows per batch
+     * @return affected rows
+     */
+    public static long batchUpdate(String sql, Iterator<Object[]> rows, int batchSize) {
+        int size = Math.max(1, batchSize);
+        Long total;
+        try {
+            total = timed(OP_BATCH, sql, () -> batch(sql, rows, size));
+        } finally {
+            // 出错时之前的批次已经提交
+            invalidate(sql);
+        }
+        return total == null ? 0 : total;
+    }
+
+    private static Long batch(String sql, Iterator<Object[]> rows, int size) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            Progress progress = new Progress(sql);
+            long affected = 0;
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                int pending = 0;
+                while (rows.hasNext()) {
+                    new ArgumentPreparedStatementSetter(rows.next()).setValues(ps);
+                    ps.addBatch();
+                    if (++pending == size) {
+                        affected += executeBatch(ps, con);
+                        progress.add(pending);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    affected += executeBatch(ps, con);
+                    progress.add(pending);
+                }
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+            progress.finish();
+            return affected;
+        });
+    }
+
+    private static long executeBatch(PreparedStatement ps, Connection con) throws SQLException {
+        long affected = 0;
+        for (int count : ps.executeBatch()) {
+            // 合并为多行语句后驱动返回 SUCCESS_NO_INFO，按 1 行计
+            affected += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count);
+        }
+        con.commit();
+        return affected;
+    }
+
+    /**
+     * 使用 LOAD DATA LOCAL INFILE 导入 MySQL，行数据在后台线程中转换为制表符分隔的文本写入管道，驱动从管道读取后发送，
+     * 不生成临时文件
+     * <p>
+     * 需要服务器 local_infile=ON，并配置 spring.datasource.hikari.data-source-properties.allowLoadLocalInfile=true
+     *
+     * @param table   table name, letters, digits and _ only
+     * @param columns column names, same order as the row values, letters, digits and _ only
+     * @param rows    values of each row, null is imported as NULL
+     * @return imported rows
+     * @throws IllegalArgumentException 表名或列名不合法
+     */
+    public static long loadData(String table, String[] columns, Iterator<Object[]> rows) {
+        checkIdentifier(table);
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("没有导入的列");
+        }
+        for (String column : columns) {
+            checkIdentifier(column);
+        }
+        String sql = "LOAD DATA LOCAL INFILE 'stream' INTO TABLE " + table + " CHARACTER SET utf8mb4 ("
+                + String.join(", ", columns) + ")";
+        Long total;
+        try {
+            total = timed(OP_LOAD, sql, () -> jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+                AtomicReference<Exception> error = new AtomicReference<>();
+                try (PipedInputStream in = new PipedInputStream(64 * 1024);
+                     Statement statement = con.createStatement()) {
+                    PipedOutputStream out = new PipedOutputStream(in);
+                    Thread writer = new Thread(() -> writeRows(sql, rows, out, error), "load-data-writer");
+                    writer.setDaemon(true);
+                    writer.start();
+
+                    statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(in);
+                    long count = statement.executeLargeUpdate(sql);
+                    writer.join();
+                    if (error.get() != null) {
+                        throw new SQLException("生成导入数据出错: " + error.get().getMessage(), error.get());
+                    }
+                    return count;
+                } catch (IOException | InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }));
+        } finally {
+            // 自动提交时导入出错前已写入的行可能已经提交
+            cache.invalidate(Collections.singleton(table));
+        }
+        return total == null ? 0 : total;
+    }
+
+    private static void checkIdentifier(String name) {
+        if (name == null || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("表名或列名不合法: " + name);
+        }
+    }
+
+    /**
+     * 把行数据写为 LOAD DATA 默认格式: 字段以制表符分隔，行以换行结束，\ 转义，NULL 写为 \N
+     */
+    private static void writeRows(String sql, Iterator<Object[]> rows, OutputStream out, AtomicReference<Exception> error) {
+        Progress progress = new Progress(sql);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024)) {
+            StringBuilder line = new StringBuilder();
+            while (rows.hasNext()) {
+                line.setLength(0);
+                appendRow(line, rows.next());
+                writer.write(line.toString());
+                progress.add(1);
+            }
+        } catch (Exception e) {
+            // 读取端已关闭 (导入失败) 或生成数据出错
+            error.set(e);
+            return;
+        }
+        progress.finish();
+    }
+
+    /**
+     * 追加一行 LOAD DATA 文本，java.util.Date 按 {@link Util#FORMAT_DATETIME} 格式，布尔值写为 1/0
+     *
+     * @param line   目标
+     * @param values 行数据
+     */
+    static void appendRow(StringBuilder line, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+            if (values[i] == null) {
+                line.append("\\N");
+                continue;
+            }
+            Object obj = values[i];
+            String value = obj.getClass() == java.util.Date.class
+                    ? format((java.util.Date) obj, FORMAT_DATETIME)
+                    : obj instanceof Boolean ? ((Boolean) obj ? "1" : "0") : obj.toString();
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                switch (c) {
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    default:
+                        line.append(c);
+                }
+            }
+        }
+        line.append('\n');
+    }
+
+    /**
+     * 批量写入进度，按 sql.progressInterval ms 输出已写入行数和每秒行数
+     */
+    private static class Progress {
+        private final String sql;
+        private final long interval = strToInt(getProperty("sql.progressInterval", "5000"), 5000);
+        private final long start = System.currentTimeMillis();
+        private final AtomicLong rows = new AtomicLong();
+        private long lastLog = start;
+
+        Progress(String sql) {
+            this.sql = sql.length() > 60 ? sql.substring(0, 60) + "..." : sql;
+        }
+
+        void add(int count) {
+            long total = rows.addAndGet(count);
+            long now = System.currentTimeMillis();
+            if (now - lastLog >= interval) {
+                lastLog = now;
+                log.info("{}: 已写入 {} 行, {} 行/秒", sql, total, rate(total, now));
+            }
+        }
+
+        void finish() {
+            long total = rows.get();
+            long now = System.currentTimeMillis();
+            log.info("{}: 完成 {} 行, 耗时 {} ms, {} 行/秒", sql, total, now - start, rate(total, now));
+        }
+
+        private long rate(long total, long now) {
+            return total * MS_SECOND / Math.max(1, now - start);
+        }
     }
-}
\ No newline at end of file
+}
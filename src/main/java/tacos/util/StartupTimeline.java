@@ -0,0 +1,97 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 启动时间线 - Startup timeline
+ * <p>
+ * 记录启动各阶段相对 JVM 启动的时刻，每个阶段只记录第一次：<ul>
+ * <li>main: 进入 main 方法</li>
+ * <li>context: Spring 容器刷新完成</li>
+ * <li>ready: 可以提供服务 (ApplicationReadyEvent)</li>
+ * <li>warmup: 浏览器预热完成</li>
+ * <li>first-measurement: 第一个测量结果产生，即 time-to-first-measurement</li>
+ * </ul>
+ * 各阶段同时作为指标 ete_startup_phase_seconds 输出
+ */
+@Slf4j
+public class StartupTimeline {
+    public static final String PHASE_MAIN = "main";
+    public static final String PHASE_CONTEXT = "context";
+    public static final String PHASE_READY = "ready";
+    public static final String PHASE_WARMUP = "warmup";
+    public static final String PHASE_FIRST_MEASUREMENT = "first-measurement";
+
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+    private static volatile boolean measured = false;
+
+    private StartupTimeline() {
+    }
+
+    /**
+     * 记录阶段完成的时刻，重复记录时忽略
+     *
+     * @param phase 阶段名称
+     * @return 相对 JVM 启动的毫秒数
+     */
+    public static long mark(String phase) {
+        long elapsed = System.currentTimeMillis() - JVM_START;
+        synchronized (phases) {
+            if (phases.containsKey(phase)) {
+                return phases.get(phase);
+            }
+            phases.put(phase, elapsed);
+        }
+        Metrics.gauge("ete_startup_phase_seconds", () -> elapsed / 1000.0, "phase", phase);
+        log.info("启动阶段 {}: {} ms", phase, elapsed);
+        return elapsed;
+    }
+
+    /**
+     * 产生测量结果时调用，只有第一次记录，之后几乎没有开销
+     */
+    public static void measured() {
+        if (!measured) {
+            measured = true;
+            mark(PHASE_FIRST_MEASUREMENT);
+            log.info(report());
+        }
+    }
+
+    /**
+     * 阶段完成的时刻
+     *
+     * @param phase 阶段名称
+     * @return 相对 JVM 启动的毫秒数，未完成返回 -1
+     */
+    public static long get(String phase) {
+        synchronized (phases) {
+            return phases.getOrDefault(phase, -1L);
+        }
+    }
+
+    /**
+     * 启动时间线报告
+     *
+     * @return 每个阶段一行，包含相对 JVM 启动的时刻和与上一阶段的间隔
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder("启动时间线 (相对 JVM 启动)");
+        long last = 0;
+        synchronized (phases) {
+            for (Map.Entry<String, Long> entry : phases.entrySet()) {
+                sb.append(System.lineSeparator())
+                        .append(Util.padRight(entry.getKey(), ' ', 20))
+                        .append(Util.padLeft(String.valueOf(entry.getValue()), ' ', 8)).append(" ms")
+                        .append("  +").append(entry.getValue() - last).append(" ms");
+                last = entry.getValue();
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package tacos.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tacos.model.ScriptResult;
+import tacos.model.ScriptStep;
+import tacos.model.SuiteResult;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static tacos.util.Util.*;
+
+/**
+ * 套件运行 - Suite runner
+ * <p>
+ * 套件是按顺序运行的一组模板，例如 suite.daily=LGN,D01,D02,S06 (可以在 ete_config 表中修改，不必重启)，整个套件租用同一个浏览器，
+ * 后面的模板沿用前面的登录和页面状态：<ul>
+ * <li>每个模板单独记录结果 ({@link SuiteResult#getResults()})</li>
+ * <li>提前结束: suite.名称.stopOn 中的模板 (默认 *，即任意模板) 出错时不再运行后续模板，LGN 登录失败总是提前结束</li>
+ * <li>流水线: 当前模板运行时，在其他线程读取并绑定下一个模板，浏览器不等待脚本准备</li>
+ * <li>套件作为一个任务交给 {@link RunDispatcher}，排队代码为 suite.名称，不同套件各自租用浏览器并行运行，
+ * 同一套件的并行数由 dispatch.cap.suite.名称 限制</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class SuiteRunner {
+    private static final String PREFIX = "suite.";
+    private static final String ALL = "*";
+
+    private final RunDispatcher dispatcher;
+    private final ProjectUtil projectUtil;
+
+    @Autowired
+    public SuiteRunner(RunDispatcher dispatcher, ProjectUtil projectUtil) {
+        this.dispatcher = dispatcher;
+        this.projectUtil = projectUtil;
+    }
+
+    /**
+     * 套件的模板列表
+     *
+     * @param name 套件名称
+     * @return 按运行顺序的模板功能代码，去掉前后空白，未定义时为空
+     */
+    public List<String> getTemplates(String name) {
+        return Arrays.asList(splitTrim(ProjectUtil.getConfig(PREFIX + name, ""), ","));
+    }
+
+    /**
+     * 套件在 {@link RunDispatcher} 中的排队代码
+     *
+     * @param name 套件名称
+     * @return suite.名称
+     */
+    public static String key(String name) {
+        return PREFIX + name;
+    }
+
+    /**
+     * 提交套件，立即返回
+     *
+     * @param name   套件名称
+     * @param params 占位符参数，所有模板共用
+     * @param source 来源: {@link ProjectUtil#SOURCE_SCHEDULE} 或 {@link ProjectUtil#SOURCE_ADHOC}
+     * @return 套件结束时得到结果
+     * @throws IllegalArgumentException 套件未定义或者包含不存在的模板
+     */
+    public CompletableFuture<SuiteResult> submit(String name, Map<String, String> params, short source) {
+        List<String> templates = getTemplates(name);
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("suite not found: " + name);
+        }
+        for (String cd : templates) {
+            if (projectUtil.getTemplate(cd) == null) {
+                throw new IllegalArgumentException("template not found: " + cd + " in suite " + name);
+            }
+        }
+
+        SuiteResult suite = new SuiteResult();
+        suite.setSuite(name);
+        Set<String> stopOn = new HashSet<>(Arrays.asList(splitTrim(ProjectUtil.getConfig(PREFIX + name + ".stopOn", ALL), ",")));
+        return dispatcher.submit(key(name), executor -> run(executor, suite, templates, stopOn, params), source)
+                .thenApply(result -> {
+                    // 没有租到浏览器时套件没有开始
+                    if (suite.getStart() == null) {
+                        suite.setErrorMessage(result.errorMessage);
+                        suite.getSkipped().addAll(templates);
+                    }
+                    return suite;
+                });
+    }
+
+    /**
+     * 在租用的浏览器上按顺序运行模板
+     *
+     * @return 汇总结果，供 {@link RunDispatcher} 记录
+     */
+    ScriptResult run(ScriptExecutor executor, SuiteResult suite, List<String> templates, Set<String> stopOn,
+                     Map<String, String> params) {
+        suite.setStart(now());
+        CompletableFuture<List<ScriptStep>> next = bind(templates.get(0), params);
+        StringBuilder errors = new StringBuilder();
+        for (int i = 0; i < templates.size(); i++) {
+            String cd = templates.get(i);
+            List<ScriptStep> steps;
+            try {
+                steps = next.join();
+            } catch (CompletionException e) {
+                steps = null;
+                log.error("套件 {} 绑定模板 {} 出错: {}", suite.getSuite(), cd, e.getCause().getMessage());
+            }
+            if (i + 1 < templates.size()) {
+                next = bind(templates.get(i + 1), params);
+            }
+
+            ScriptResult result = runTemplate(executor, cd, steps, params);
+            suite.getResults().put(cd, result);
+            if (isEmpty(result.errorMessage)) {
+                continue;
+            }
+            errors.append(cd).append(": ").append(left(result.errorMessage, System.lineSeparator())).append(System.lineSeparator());
+            if (ProjectUtil.TEMPLATE_LOGIN.equals(cd) || stopOn.contains(ALL) || stopOn.contains(cd)) {
+                suite.setStoppedBy(cd);
+                suite.getSkipped().addAll(templates.subList(i + 1, templates.size()));
+                log.warn("套件 {} 在模板 {} 出错，跳过 {}", suite.getSuite(), cd, suite.getSkipped());
+                break;
+            }
+        }
+        suite.setEnd(now());
+        suite.setErrorMessage(errors.toString().trim());
+        Metrics.timer("ete_suite_duration_seconds", "suite", suite.getSuite()).recordMillis(diffTime(suite.getStart(), suite.getEnd()));
+        Metrics.counter("ete_suite_total", "suite", suite.getSuite(), "result", suite.getStoppedBy() == null ? "complete" : "stopped").inc();
+
+        ScriptResult total = new ScriptResult();
+        total.start = suite.getStart();
+        total.end = suite.getEnd();
+        total.errorMessage = suite.getErrorMessage();
+        return total;
+    }
+
+    private ScriptResult runTemplate(ScriptExecutor executor, String cd, List<ScriptStep> steps, Map<String, String> params) {
+        if (steps == null) {
+            ScriptResult result = new ScriptResult();
+            result.errorMessage = now(FORMAT_DATETIME) + ": template binding failed";
+            return result;
+        }
+        try (Tracer.Span span = Tracer.start("template").attr("cd", cd)) {
+            if (ProjectUtil.TEMPLATE_LOGIN.equals(cd)) {
+                ScriptResult result = new ScriptResult();
+                result.start = now();
+                if (SessionCache.MODE_FAILED.equals(dispatcher.login(executor, params))) {
+                    result.errorMessage = now(FORMAT_DATETIME) + ": login failed";
+                }
+                result.end = now();
+                return result;
+            }
+            ScriptResult result = executor.execute(steps, cd, true);
+            if (!isEmpty(result.errorMessage)) {
+                span.error(left(result.errorMessage, System.lineSeparator()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 在其他线程读取模板并替换占位符，与当前模板的运行重叠
+     */
+    private CompletableFuture<List<ScriptStep>> bind(String cd, Map<String, String> params) {
+        return CompletableFuture.supplyAsync(() -> ScriptExecutor.buildScript(projectUtil.getTemplate(cd), params));
+    }
+}
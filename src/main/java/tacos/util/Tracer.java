@@ -0,0 +1,398 @@
+package tacos.util;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static tacos.util.Util.*;
+
+/**
+ * 运行追踪 - Run tracer
+ * <p>
+ * 每次脚本运行是一个 trace，根 span 为运行本身，子 span 为排队、租用浏览器、步骤、等待、截图、数据库和页面请求。<br/>
+ * 运行结束时决定是否保留：按 trace.sampleRate 比例随机保留，出错的运行 (trace.keepErrors) 和耗时超过 trace.slowThreshold ms
+ * 的运行总是保留。保留的 trace 由后台线程写入 trace.dir 下的滚动文件，每行一个 OTLP JSON (ExportTraceServiceRequest)，
+ * 可以直接导入 OpenTelemetry Collector 的 otlpjsonfile receiver 或 Jaeger 离线分析。
+ * <p>
+ * 当前 span 保存在线程变量中，在其他线程执行的子任务用 {@link #wrap(Runnable)} 传递。没有当前 span 或 trace.enabled=false 时
+ * 返回空操作的 span，调用方不必判断 <br/>
+ * Usage:
+ * <pre>{@code
+ * try (Tracer.Span span = Tracer.start("screenshot")) {
+ *     ...
+ * }
+ * }</pre>
+ */
+@Slf4j
+public class Tracer {
+    private static final long BASE_EPOCH_NANOS = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+    private static final ThreadLocal<Span> current = new ThreadLocal<>();
+    private static final BlockingQueue<String> pending = new ArrayBlockingQueue<>(1000);
+    private static final Span NOOP = new Span(null, null, "", 0);
+    private static Thread writer;
+
+    private Tracer() {
+    }
+
+    /**
+     * 一次运行中收集的 span
+     */
+    private static final class Trace {
+        final String traceId = randomHex(16);
+        final boolean sampled;
+        final List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean error;
+
+        Trace(boolean sampled) {
+            this.sampled = sampled;
+        }
+    }
+
+    /**
+     * 一个操作的时间段
+     */
+    public static class Span implements AutoCloseable {
+        private final Trace trace;
+        private final Span parent;
+        private final String spanId;
+        private final String name;
+        private final long start;
+        private long end;
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+        private String error;
+
+        Span(Trace trace, Span parent, String name, long start) {
+            this.trace = trace;
+            this.parent = parent;
+            this.spanId = trace == null ? "" : randomHex(8);
+            this.name = name;
+            this.start = start;
+        }
+
+        /**
+         * 添加属性
+         *
+         * @param key   属性名
+         * @param value 属性值，数值、布尔或字符串
+         * @return this
+         */
+        public Span attr(String key, Object value) {
+            if (trace != null && value != null) {
+                attributes.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * 标记出错，所在的 trace 作为出错的运行处理
+         *
+         * @param message 错误信息
+         * @return this
+         */
+        public Span error(String message) {
+            if (trace != null) {
+                error = toStr(message);
+                trace.error = true;
+            }
+            return this;
+        }
+
+        /**
+         * @return 是否记录，空操作的 span 返回 false
+         */
+        public boolean isRecording() {
+            return trace != null;
+        }
+
+        /**
+         * 结束，恢复父 span 为当前 span，根 span 结束时决定是否导出
+         */
+        public void end() {
+            end(epochNanos());
+        }
+
+        /**
+         * 在指定时刻结束
+         *
+         * @param endEpochNanos 结束时刻，单位 ns
+         */
+        public void end(long endEpochNanos) {
+            if (trace == null || end != 0) {
+                return;
+            }
+            end = endEpochNanos;
+            trace.spans.add(this);
+            // 子 span 异常未结束时，一并跳过
+            for (Span span = current.get(); span != null; span = span.parent) {
+                if (span == this) {
+                    if (parent == null) {
+                        current.remove();
+                    } else {
+                        current.set(parent);
+                    }
+                    break;
+                }
+            }
+            if (parent == null) {
+                finish(trace, this);
+            }
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+
+    /**
+     * @return 当前时刻，Unix 纪元以来的 ns
+     */
+    public static long epochNanos() {
+        return BASE_EPOCH_NANOS + System.nanoTime();
+    }
+
+    /**
+     * 开始一次运行的 trace，成为当前线程的当前 span
+     *
+     * @param name             名称
+     * @param startEpochMillis 开始时刻，单位 ms，例如提交运行的时刻
+     * @return 根 span
+     */
+    public static Span startRun(String name, long startEpochMillis) {
+        if (!strToBoolean(getProperty("trace.enabled", "false"))) {
+            return NOOP;
+        }
+        double rate;
+        try {
+            rate = Double.parseDouble(getProperty("trace.sampleRate", "0.01"));
+        } catch (NumberFormatException e) {
+            rate = 0;
+        }
+        Span span = new Span(new Trace(ThreadLocalRandom.current().nextDouble() < rate), null, name, startEpochMillis * 1_000_000);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * 开始当前 span 的子 span，并成为当前 span
+     *
+     * @param name 名称
+     * @return 子 span，没有当前 span 时为空操作
+     */
+    public static Span start(String name) {
+        return start(name, epochNanos());
+    }
+
+    /**
+     * 开始当前 span 的子 span，并成为当前 span
+     *
+     * @param name            名称
+     * @param startEpochNanos 开始时刻，单位 ns
+     * @return 子 span，没有当前 span 时为空操作
+     */
+    public static Span start(String name, long startEpochNanos) {
+        Span parent = current.get();
+        if (parent == null) {
+            return NOOP;
+        }
+        Span span = new Span(parent.trace, parent, name, startEpochNanos);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * @return 当前 span，没有时为空操作
+     */
+    public static Span current() {
+        Span span = current.get();
+        return span == null ? NOOP : span;
+    }
+
+    /**
+     * 把当前 span 传递给在其他线程执行的任务
+     *
+     * @param task 任务
+     * @return 包装后的任务
+     */
+    public static Runnable wrap(Runnable task) {
+        Span parent = current.get();
+        if (parent == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = current.get();
+            current.set(parent);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+
+    private static String randomHex(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < bytes; i++) {
+            sb.append(Character.forDigit(random.nextInt(16), 16)).append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 根 span 结束，决定是否保留，保留的交给后台线程写入文件
+     */
+    private static void finish(Trace trace, Span root) {
+        long slow = strToInt(getProperty("trace.slowThreshold", "60000"), 60000) * 1_000_000L;
+        boolean keep = trace.sampled
+                || (trace.error && strToBoolean(getProperty("trace.keepErrors", "true")))
+                || root.end - root.start >= slow;
+        if (!keep) {
+            return;
+        }
+
+        String line = toOtlpJson(trace);
+        if (!pending.offer(line)) {
+            Metrics.counter("ete_trace_dropped_total").inc();
+            return;
+        }
+        ensureWriter();
+    }
+
+    /**
+     * 转为 OTLP JSON 格式
+     *
+     * @param t 运行的全部 span
+     * @return 一行 JSON
+     */
+    private static String toOtlpJson(Trace t) {
+        List<Map<String, Object>> spans = new ArrayList<>();
+        synchronized (t.spans) {
+            for (Span span : t.spans) {
+                Map<String, Object> map = new LinkedHashMap<>();
+                map.put("traceId", t.traceId);
+                map.put("spanId", span.spanId);
+                if (span.parent != null) {
+                    map.put("parentSpanId", span.parent.spanId);
+                }
+                map.put("name", span.name);
+                map.put("kind", 1);
+                map.put("startTimeUnixNano", String.valueOf(span.start));
+                map.put("endTimeUnixNano", String.valueOf(span.end));
+                List<Map<String, Object>> attributes = new ArrayList<>();
+                span.attributes.forEach((key, value) -> attributes.add(attribute(key, value)));
+                map.put("attributes", attributes);
+                Map<String, Object> status = new LinkedHashMap<>();
+                if (span.error != null) {
+                    status.put("code", 2);
+                    status.put("message", span.error);
+                }
+                map.put("status", status);
+                spans.add(map);
+            }
+        }
+
+        Map<String, Object> scope = new LinkedHashMap<>();
+        scope.put("scope", Collections.singletonMap("name", "tacos"));
+        scope.put("spans", spans);
+        Map<String, Object> resource = new LinkedHashMap<>();
+        resource.put("resource", Collections.singletonMap("attributes",
+                Collections.singletonList(attribute("service.name", getProperty("trace.serviceName", "ete")))));
+        resource.put("scopeSpans", Collections.singletonList(scope));
+        return new Gson().toJson(Collections.singletonMap("resourceSpans", Collections.singletonList(resource)));
+    }
+
+    private static Map<String, Object> attribute(String key, Object value) {
+        Map<String, Object> typed = new HashMap<>();
+        if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+            // OTLP JSON 中 64 位整数用字符串表示
+            typed.put("intValue", value.toString());
+        } else if (value instanceof Number) {
+            typed.put("doubleValue", value);
+        } else if (value instanceof Boolean) {
+            typed.put("boolValue", value);
+        } else {
+            typed.put("stringValue", value.toString());
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("key", key);
+        map.put("value", typed);
+        return map;
+    }
+
+    private static synchronized void ensureWriter() {
+        if (writer != null && writer.isAlive()) {
+            return;
+        }
+        writer = new Thread(Tracer::writeLoop, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 写入滚动文件，单个文件超过 trace.maxFileSize 字节后新建，最多保留 trace.maxFiles 个
+     */
+    private static void writeLoop() {
+        Writer out = null;
+        File file = null;
+        String dir = null;
+        int sequence = 0;
+        try {
+            while (true) {
+                String line = pending.take();
+                String target = pathEndWithSeparator(getProperty("trace.dir", "trace"));
+                long maxSize = strToInt(getProperty("trace.maxFileSize", "10485760"), 10485760);
+                if (file == null || file.length() >= maxSize || !target.equals(dir)) {
+                    if (out != null) {
+                        out.close();
+                    }
+                    dir = target;
+                    //noinspection ResultOfMethodCallIgnored
+                    new File(dir).mkdirs();
+                    file = new File(dir + "trace-" + now(FORMAT_SHORT_DATETIME) + "-" + padLeft(String.valueOf(++sequence % 1000), '0', 3) + ".jsonl");
+                    out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+                    removeOldFiles(dir, strToInt(getProperty("trace.maxFiles", "20"), 20));
+                }
+                out.write(line);
+                out.write('\n');
+                if (pending.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("写入追踪文件出错: " + e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.debug("关闭追踪文件出错: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void removeOldFiles(String dir, int maxFiles) {
+        File[] files = new File(dir).listFiles((d, name) -> name.startsWith("trace-") && name.endsWith(".jsonl"));
+        if (files == null || files.length <= maxFiles) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package tacos.util;
+
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 触发时间分散 - Trigger spreader
+ * <p>
+ * 大量计划使用相同的 cron (例如 0 0 *&#47;1 * * ?) 时会在同一秒触发，同时启动大量 Chrome，并对目标系统产生尖峰压力。
+ * 本类把相同 cron 的计划均匀错开到整个间隔内，并叠加按名称计算的固定抖动，周期保持不变，结果可重复 <br/>
+ * Spreads schedules sharing a cron across the interval with a deterministic per-job jitter, the period is kept.
+ * <p>
+ * 只调整秒和分钟字段，秒必须为固定数值，分钟可以为 n、*、*&#47;b、a/b 形式，其他 cron 保持原样
+ */
+public class TriggerSpreader {
+    private static final long SECONDS_HOUR = 3600;
+
+    private TriggerSpreader() {
+    }
+
+    /**
+     * 按名称计算固定的抖动值
+     *
+     * @param key 计划名称
+     * @param max 最大抖动，不含
+     * @return [0, max) 之间的值，同一名称总是相同
+     */
+    public static long jitter(String key, long max) {
+        if (max <= 0) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(key.getBytes());
+        return crc.getValue() % max;
+    }
+
+    /**
+     * 解析分钟字段
+     *
+     * @param field 分钟字段
+     * @return {起始分钟, 步长}，不支持返回 null
+     */
+    private static int[] parseMinute(String field) {
+        if ("*".equals(field)) {
+            return new int[]{0, 1};
+        }
+        if (Util.isInt(field)) {
+            return new int[]{Integer.parseInt(field), 60};
+        }
+        String[] parts = field.split("/");
+        if (parts.length == 2 && Util.isInt(parts[1])) {
+            int start = "*".equals(parts[0]) ? 0 : Util.strToInt(parts[0], -1);
+            int step = Integer.parseInt(parts[1]);
+            if (start >= 0 && step > 0 && 60 % step == 0) {
+                return new int[]{start % step, step};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 可以错开的时间窗口
+     *
+     * @param cron cron 表达式
+     * @return 窗口大小，单位秒，不支持调整返回 0
+     */
+    public static long window(String cron) {
+        String[] fields = cron.trim().split("\\s+");
+        if (fields.length < 6 || !Util.isInt(fields[0])) {
+            return 0;
+        }
+        int[] minute = parseMinute(fields[1]);
+        return minute == null ? 0 : minute[1] * 60L;
+    }
+
+    /**
+     * 把 cron 的触发时刻整体推后 offset 秒，超出窗口部分回绕，周期不变
+     *
+     * @param cron   cron 表达式
+     * @param offset 偏移，单位秒
+     * @return 调整后的 cron，不支持调整时返回原值
+     */
+    public static String shift(String cron, long offset) {
+        long window = window(cron);
+        if (window == 0 || offset % window == 0) {
+            return cron;
+        }
+
+        String[] fields = cron.trim().split("\\s+");
+        int[] minute = parseMinute(fields[1]);
+        long start = (minute[0] * 60L + Integer.parseInt(fields[0]) + offset) % window;
+        fields[0] = String.valueOf(start % 60);
+        if (window == SECONDS_HOUR) {
+            fields[1] = String.valueOf(start / 60);
+        } else if (minute[1] == 1) {
+            fields[1] = "*";
+        } else {
+            fields[1] = (start / 60) + "/" + minute[1];
+        }
+        return String.join(" ", fields);
+    }
+
+    /**
+     * 为计划分配触发时刻，相同 cron 的计划在窗口内均匀错开，每个计划再叠加不超过一个间隔的固定抖动
+     *
+     * @param crons     计划名称 => cron 表达式
+     * @param maxJitter 最大抖动，单位秒
+     * @return 计划名称 => 调整后的 cron 表达式
+     */
+    public static Map<String, String> plan(Map<String, String> crons, long maxJitter) {
+        Map<String, List<String>> groups = new TreeMap<>();
+        crons.forEach((key, cron) -> groups.computeIfAbsent(cron.trim(), k -> new ArrayList<>()).add(key));
+
+        Map<String, String> result = new HashMap<>();
+        groups.forEach((cron, keys) -> {
+            long window = window(cron);
+            if (window == 0) {
+                keys.forEach(key -> result.put(key, cron));
+                return;
+            }
+            Collections.sort(keys);
+            long slot = window / keys.size();
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                long offset = i * slot + jitter(key, Math.min(maxJitter, slot));
+                result.put(key, shift(cron, offset));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 计算一段时间内每个时间片同时运行的计划数量
+     *
+     * @param crons    cron 表达式清单
+     * @param duration 每次运行的预计耗时，单位 ms
+     * @param from     开始时间
+     * @param horizon  统计时长，单位 ms
+     * @param bucket   时间片大小，单位 ms
+     * @return 每个时间片的并发数量
+     */
+    public static int[] profile(Collection<String> crons, long duration, Date from, long horizon, long bucket) {
+        int[] counts = new int[(int) Math.max(1, horizon / bucket)];
+        long begin = from.getTime();
+        duration = Math.max(1, duration);
+        for (String cron : crons) {
+            CronExpression expression;
+            try {
+                expression = new CronExpression(cron);
+            } catch (ParseException e) {
+                continue;
+            }
+            // 从前一个 duration 开始，统计跨越起点的运行
+            Date fire = expression.getNextValidTimeAfter(new Date(begin - duration));
+            while (fire != null && fire.getTime() < begin + horizon) {
+                long first = Math.max(0, fire.getTime() - begin) / bucket;
+                long last = Math.min(begin + horizon - 1, fire.getTime() + duration - 1) - begin;
+                for (long i = first; last >= 0 && i <= last / bucket && i < counts.length; i++) {
+                    counts[(int) i]++;
+                }
+                fire = expression.getNextValidTimeAfter(fire);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 并发分布报告
+     *
+     * @param counts 每个时间片的并发数量
+     * @param bucket 时间片大小，单位 ms
+     * @return 多行文本，每行一个有运行的时间片
+     */
+    public static String report(int[] counts, long bucket) {
+        int max = 0;
+        for (int count : counts) {
+            max = Math.max(max, count);
+        }
+        StringBuilder sb = new StringBuilder("最大并发: ").append(max);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                long seconds = i * bucket / Util.MS_SECOND;
+                sb.append(System.lineSeparator())
+                        .append(String.format("+%02d:%02d ", seconds / 60, seconds % 60))
+                        .append(Util.padLeft(String.valueOf(counts[i]), ' ', 3))
+                        .append(' ')
+                        .append("#".repeat(counts[i]));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -170,6 +170,8 @@ public class Util {
 
     /**
      * 重新读取或加载 application.properties 数据，若外部修改，可以立刻生效
+     * <p>
+     * 优先级: -D 系统属性 > jar 所在目录下的 application.properties > jar 包中的 application.properties
      */
     public static void reloadApplicationProperties() {
         properties.clear();
@@ -185,6 +187,14 @@ public class Util {
             Properties fileProperty = loadProperties(file);
             properties.putAll(fileProperty);
         }
+
+        // 最后 -D 指定的同名系统属性优先，只覆盖已有的配置项，例如 -Dstartup.warmup=0
+        for (String key : properties.stringPropertyNames()) {
+            String value = System.getProperty(key);
+            if (value != null) {
+                properties.setProperty(key, value);
+            }
+        }
     }
 
     /**
@@ -2830,6 +2840,17 @@ public class Util {
         return strArr;
     }
 
+    /**
+     * 字符串分隔，去掉每项前后的空白并忽略空项，用于 "D01, D02" 这类便于阅读的列表配置
+     *
+     * @param str  待分隔字符串
+     * @param sign 分隔符
+     * @return 分隔后的数组
+     */
+    public static String[] splitTrim(String str, String sign) {
+        return Arrays.stream(split(str, sign)).map(String::trim).filter(item -> !item.isEmpty()).toArray(String[]::new);
+    }
+
     /**
      * 获取本机IP
      *
@@ -0,0 +1,25 @@
+create table if not exists ete_schedule
+(
+    name     varchar(100) not null primary key comment '计划名称',
+    cron     varchar(120) not null comment 'cron 表达式',
+    cd       varchar(200) null comment '模板功能代码，逗号分隔，为空表示全部',
+    params   text         null comment '占位符参数 JSON',
+    dataset  varchar(1000) null comment '参数数据集: csv:路径、jsonl:路径 或 sql:查询语句',
+    priority int          not null default 5 comment '触发优先级',
+    enabled  tinyint(1)   not null default 1 comment '是否启用',
+    version  bigint       not null default 1 comment '版本号，每次修改递增'
+) comment '定时计划';
+
+create table if not exists ete_config
+(
+    name    varchar(100) not null primary key comment '配置名称',
+    value   varchar(1000) null comment '配置值',
+    version bigint       not null default 1 comment '版本号，每次修改递增'
+) comment '运行配置，覆盖 application.properties';
+
+create table if not exists ete_checkpoint
+(
+    id        varchar(200) not null primary key comment '检查点标识: 任务-模板-计划触发时间',
+    watermark bigint       not null default 0 comment '从起点开始连续完成的行数',
+    updated   datetime     null comment '更新时间'
+) comment '数据集运行检查点，所有节点可见，节点宕机后由其他节点继续';
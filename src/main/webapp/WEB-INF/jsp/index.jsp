@@ -9,6 +9,6 @@
 </head>
 <body>
 <h2>Hello ${msg}</h2>
-<img src="/images/TacoCloud.png"/>
+<img src="<spring:url value="/images/TacoCloud.png"/>"/>
 </body>
 </html>
\ No newline at end of file
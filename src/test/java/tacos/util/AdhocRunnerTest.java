@@ -0,0 +1,96 @@
+package tacos.util;
+
+import org.testng.annotations.Test;
+import tacos.model.AdhocRun;
+import tacos.model.ScriptResult;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class AdhocRunnerTest {
+
+    @Test
+    public void testCoalesceAndReuse() {
+        ProjectUtil projectUtil = mock(ProjectUtil.class);
+        when(projectUtil.getTemplate("D01")).thenReturn("[]");
+        RunDispatcher dispatcher = mock(RunDispatcher.class);
+        CompletableFuture<ScriptResult> first = new CompletableFuture<>();
+        when(dispatcher.submit(eq("D01"), anyString(), any(), anyShort())).thenReturn(first, new CompletableFuture<>());
+        AdhocRunner runner = new AdhocRunner(dispatcher, projectUtil);
+
+        Map<String, String> params = Collections.singletonMap("@NO", "1");
+        AdhocRunner.Submission a = runner.submit("D01", params, 60000);
+        AdhocRunner.Submission b = runner.submit("D01", Collections.singletonMap("@NO", "1"), 60000);
+        assertEquals(a.getMode(), AdhocRunner.Submission.CREATED);
+        assertEquals(b.getMode(), AdhocRunner.Submission.COALESCED);
+        assertSame(b.getRun(), a.getRun());
+
+        first.complete(new ScriptResult());
+        assertEquals(a.getRun().getStatus(), AdhocRun.STATUS_DONE);
+        assertTrue(runner.await(a.getRun().getId()).isDone());
+
+        // 新鲜期内直接返回，不指定新鲜期时重新运行
+        assertEquals(runner.submit("D01", params, 60000).getMode(), AdhocRunner.Submission.REUSED);
+        assertEquals(runner.submit("D01", params, 0).getMode(), AdhocRunner.Submission.CREATED);
+        verify(dispatcher, times(2)).submit(eq("D01"), anyString(), any(), anyShort());
+        assertTrue(runner.getCoalesced() >= 1);
+        assertTrue(runner.getReused() >= 1);
+    }
+
+    @Test
+    public void testFailedNotReused() {
+        ProjectUtil projectUtil = mock(ProjectUtil.class);
+        when(projectUtil.getTemplate("D01")).thenReturn("[]");
+        RunDispatcher dispatcher = mock(RunDispatcher.class);
+        ScriptResult failed = new ScriptResult();
+        failed.errorMessage = "no browser available, lease timeout";
+        when(dispatcher.submit(eq("D01"), anyString(), any(), anyShort()))
+                .thenReturn(CompletableFuture.completedFuture(failed), new CompletableFuture<>());
+        AdhocRunner runner = new AdhocRunner(dispatcher, projectUtil);
+
+        AdhocRunner.Submission a = runner.submit("D01", null, 60000);
+        assertEquals(a.getRun().getStatus(), AdhocRun.STATUS_FAILED);
+        assertEquals(runner.submit("D01", null, 60000).getMode(), AdhocRunner.Submission.CREATED);
+    }
+
+    @Test
+    public void testAdmission() {
+        ProjectUtil projectUtil = mock(ProjectUtil.class);
+        when(projectUtil.getTemplate("D01")).thenReturn("[]");
+        RunDispatcher dispatcher = mock(RunDispatcher.class);
+        when(dispatcher.submit(anyString(), anyString(), any(), anyShort())).thenAnswer(i -> new CompletableFuture<>());
+        AdhocRunner runner = new AdhocRunner(dispatcher, projectUtil);
+
+        for (int i = 0; i < runner.getMaxQueue(); i++) {
+            runner.submit("D01", Collections.singletonMap("@NO", String.valueOf(i)), 0);
+        }
+        expectThrows(RejectedExecutionException.class, () -> runner.submit("D01", Collections.singletonMap("@NO", "x"), 0));
+        expectThrows(IllegalArgumentException.class, () -> runner.submit("X99", null, 0));
+    }
+
+    @Test
+    public void testAdmitGroup() {
+        AdhocRunner runner = new AdhocRunner(mock(RunDispatcher.class), mock(ProjectUtil.class));
+        int max = runner.getMaxQueue();
+
+        CompletableFuture<String> group = new CompletableFuture<>();
+        assertSame(runner.admit(max - 1, () -> group), group);
+        assertEquals(runner.getOutstanding(), max - 1);
+        expectThrows(RejectedExecutionException.class, () -> runner.admit(2, CompletableFuture::new));
+
+        // 提交出错时释放名额
+        expectThrows(IllegalArgumentException.class, () -> runner.admit(1, () -> {
+            throw new IllegalArgumentException("unknown profile");
+        }));
+        assertEquals(runner.getOutstanding(), max - 1);
+
+        group.complete("done");
+        assertEquals(runner.getOutstanding(), 0);
+    }
+}
@@ -0,0 +1,32 @@
+package tacos.util;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.*;
+
+public class AssetCompressorTest {
+
+    @Test
+    public void testCompress() throws IOException {
+        Path dir = Files.createTempDirectory("assets");
+        String css = "body { color: #333; }\n".repeat(100);
+        Files.writeString(dir.resolve("style.css"), css);
+        Files.writeString(dir.resolve("tiny.js"), "x");
+        Files.write(dir.resolve("logo.png"), new byte[]{1, 2, 3});
+
+        assertTrue(AssetCompressor.compress(dir) >= 1);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(dir.resolve("style.css.gz")))) {
+            assertEquals(new String(in.readAllBytes(), StandardCharsets.UTF_8), css);
+        }
+        // 压缩后更大的不保留，图片不压缩
+        assertFalse(Files.exists(dir.resolve("tiny.js.gz")));
+        assertFalse(Files.exists(dir.resolve("logo.png.gz")));
+    }
+}
@@ -0,0 +1,69 @@
+package tacos.util;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.annotations.Test;
+import tacos.util.Impl.CsvDatasetSource;
+import tacos.util.Impl.JdbcDatasetSource;
+import tacos.util.Impl.JsonLinesDatasetSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public class DatasetSourceTest {
+
+    @Test
+    public void testCsv() throws IOException {
+        String csv = "\uFEFFNO,NAME\n1,\"Smith, John\"\n2,\"say \"\"hi\"\"\"\n3,\n";
+        try (DatasetSource source = new CsvDatasetSource(new StringReader(csv))) {
+            Map<String, String> row = source.next();
+            assertEquals(row.get("@NO"), "1");
+            assertEquals(row.get("@NAME"), "Smith, John");
+            assertEquals(source.next().get("@NAME"), "say \"hi\"");
+            assertEquals(source.next().get("@NAME"), "");
+            assertNull(source.next());
+        }
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        String csv = "NO\n1\n2\n3\n";
+        try (DatasetSource source = new CsvDatasetSource(new StringReader(csv))) {
+            assertEquals(source.skip(2), 2);
+            assertEquals(source.next().get("@NO"), "3");
+            assertEquals(source.skip(5), 0);
+        }
+    }
+
+    @Test
+    public void testJsonLines() throws IOException {
+        String jsonl = "{\"NO\": \"1\"}\n\n{\"NO\": 2}\n";
+        try (DatasetSource source = new JsonLinesDatasetSource(new StringReader(jsonl))) {
+            assertEquals(source.next().get("@NO"), "1");
+            assertEquals(source.next().get("@NO"), "2");
+            assertNull(source.next());
+        }
+    }
+
+    @Test
+    public void testJdbcPaging() throws IOException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:dataset;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table patient (no int primary key, name varchar(20))");
+        for (int i = 1; i <= 5; i++) {
+            jdbc.update("insert into patient values (?, ?)", i, "P" + i);
+        }
+
+        try (DatasetSource source = new JdbcDatasetSource(dataSource, "select no, name from patient order by no;", 2)) {
+            assertEquals(source.skip(3), 3);
+            Map<String, String> row = source.next();
+            assertEquals(row.get("@NO"), "4");
+            assertEquals(row.get("@NAME"), "P4");
+            assertEquals(source.next().get("@NO"), "5");
+            assertNull(source.next());
+        }
+    }
+}
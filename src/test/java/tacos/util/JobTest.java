@@ -0,0 +1,16 @@
+package tacos.util;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+public class JobTest {
+
+    @Test
+    public void testParseParams() {
+        assertEquals(Job.parseParams("{\"@NO\": \"123\"}").get(0).get("@NO"), "123");
+        assertEquals(Job.parseParams("[{\"@NO\": \"1\"}, {\"@NO\": \"2\"}]").size(), 2);
+        assertTrue(Job.parseParams("").isEmpty());
+        assertTrue(Job.parseParams("not json").isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package tacos.util;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import tacos.model.LoadPlan;
+import tacos.model.LoadReport;
+import tacos.model.ScriptResult;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class LoadRunnerTest {
+
+    @AfterMethod
+    public void tearDown() {
+        Util.setProperty("load.maxUsers", "200");
+    }
+
+    private static LoadRunner runner(AtomicInteger runs) {
+        ProjectUtil projectUtil = mock(ProjectUtil.class);
+        when(projectUtil.getTemplate(anyString())).thenReturn("[]");
+        return new LoadRunner(projectUtil, new SessionCache(), size -> new BrowserPool(size, () -> {
+            ScriptExecutor executor = mock(ScriptExecutor.class);
+            when(executor.execute(any(), eq("D01"), anyBoolean())).thenAnswer(invocation -> {
+                ScriptResult result = new ScriptResult();
+                result.start = new Date();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                result.end = new Date();
+                result.measure_time_1 = 0.02f;
+                if (runs.incrementAndGet() % 4 == 0) {
+                    result.errorMessage = "timeout";
+                }
+                return result;
+            });
+            when(executor.execute(any(), eq(ProjectUtil.TEMPLATE_LOGIN), anyBoolean())).thenReturn(new ScriptResult());
+            return executor;
+        }, "pool", "test"));
+    }
+
+    private static LoadPlan plan(int users) {
+        LoadPlan plan = new LoadPlan();
+        plan.setCd("D01");
+        plan.setUsers(users);
+        plan.setRampUp(100);
+        plan.setSteady(400);
+        plan.setPacing(50);
+        return plan;
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        Util.setProperty("load.maxUsers", "3");
+        AtomicInteger runs = new AtomicInteger();
+        LoadRunner runner = runner(runs);
+        CompletableFuture<LoadReport> done = runner.start(plan(5));
+        expectThrows(IllegalStateException.class, () -> runner.start(plan(1)));
+        assertEquals(runner.getReport().getStatus(), LoadRunner.STATUS_RUNNING);
+
+        LoadReport report = done.get(10, TimeUnit.SECONDS);
+        assertEquals(report.getStatus(), LoadRunner.STATUS_DONE);
+        assertEquals(report.getUsers(), 3);
+        assertEquals(report.getActiveUsers(), 0);
+        assertEquals(report.getIterations(), runs.get());
+        // pacing 50 ms，每个用户约 8~10 次迭代
+        assertTrue(report.getIterations() >= 15 && report.getIterations() <= 33, "iterations " + report.getIterations());
+        assertEquals(report.getErrors(), runs.get() / 4);
+        assertTrue(report.getDuration().get("p50") > 0);
+        assertNotNull(report.getMeasures().get("measure_time_1"));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        LoadRunner runner = runner(new AtomicInteger());
+        LoadPlan plan = plan(2);
+        plan.setSteady(60000);
+        CompletableFuture<LoadReport> done = runner.start(plan);
+        Thread.sleep(200);
+        runner.stop();
+        assertEquals(done.get(5, TimeUnit.SECONDS).getStatus(), LoadRunner.STATUS_STOPPED);
+    }
+}
@@ -0,0 +1,87 @@
+package tacos.util;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void testCounter() throws InterruptedException {
+        Metrics.Counter counter = Metrics.counter("test_counter_total", "cd", "D01");
+        assertSame(Metrics.counter("test_counter_total", "cd", "D01"), counter);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    counter.inc();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(counter.get(), 40000);
+    }
+
+    @Test
+    public void testTimerPercentile() {
+        Metrics.Timer timer = Metrics.timer("test_timer_seconds");
+        for (int i = 1; i <= 1000; i++) {
+            timer.recordMillis(i);
+        }
+        assertEquals(timer.getCount(), 1000);
+        assertEquals(timer.percentile(0.5), 0.5, 0.05);
+        assertEquals(timer.percentile(0.9), 0.9, 0.09);
+        assertTrue(timer.percentile(1) <= 1.0);
+    }
+
+    @Test
+    public void testTimerWindow() {
+        long[] now = {System.currentTimeMillis()};
+        Metrics.clock = () -> now[0];
+        try {
+            Metrics.Timer timer = new Metrics.Timer("test_window_seconds", "", 2);
+            timer.recordMillis(1000);
+            now[0] += Util.MS_MINUTE;
+            timer.recordMillis(10);
+            assertEquals(timer.percentile(0.99), 1.0, 0.1);
+
+            // 第一分钟的记录移出窗口，百分位只反映最近的记录，计数仍然累计
+            now[0] += Util.MS_MINUTE;
+            assertEquals(timer.percentile(0.99), 0.01, 0.001);
+            assertEquals(timer.getCount(), 2);
+
+            now[0] += Util.MS_MINUTE * 2;
+            assertEquals(timer.percentile(0.5), 0.0);
+
+            Metrics.Timer total = new Metrics.Timer("test_total_seconds", "", 0);
+            total.recordMillis(1000);
+            now[0] += Util.MS_MINUTE * 60;
+            assertEquals(total.percentile(0.5), 1.0, 0.1);
+        } finally {
+            Metrics.clock = System::currentTimeMillis;
+        }
+    }
+
+    @Test
+    public void testScrape() {
+        Metrics.counter("test_scrape_total", "kind", "a\"b").add(3);
+        Metrics.gauge("test_scrape_gauge", () -> 2.5);
+        Metrics.timer("test_scrape_seconds", "op", "query").recordMillis(1500);
+
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# TYPE test_scrape_total counter\ntest_scrape_total{kind=\"a\\\"b\"} 3\n"));
+        assertTrue(text.contains("test_scrape_gauge 2.5\n"));
+        assertTrue(text.contains("# TYPE test_scrape_seconds summary\n"));
+        assertTrue(text.contains("test_scrape_seconds{op=\"query\",quantile=\"0.5\"} "));
+        assertTrue(text.contains("test_scrape_seconds_sum{op=\"query\"} 1.5\n"));
+        assertTrue(text.contains("test_scrape_seconds_count{op=\"query\"} 1\n"));
+    }
+}
@@ -0,0 +1,67 @@
+package tacos.util;
+
+import org.testng.annotations.Test;
+import tacos.model.MatrixResult;
+import tacos.model.NetworkProfile;
+import tacos.model.ScriptResult;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class NetworkMatrixTest {
+
+    @Test
+    public void testProfile() {
+        Util.setProperty("network.profile.T4G", "50, 1500000,750000");
+        NetworkProfile profile = NetworkMatrix.getProfile("T4G");
+        assertEquals(profile.getLatency(), 50);
+        assertEquals(profile.getDownload(), 1500000);
+        assertEquals(profile.getUpload(), 750000);
+        assertEquals(NetworkMatrix.getProfile("missing"), null);
+    }
+
+    @Test
+    public void testConcurrentProfiles() throws Exception {
+        Util.setProperty("network.profile.TLAN", "0,-1,-1");
+        Util.setProperty("network.profile.T3G", "400,50000,25000");
+        // 两个网络条件各占一个浏览器，同时运行才能都通过闸门
+        CountDownLatch both = new CountDownLatch(2);
+        List<ScriptExecutor> browsers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ScriptExecutor executor = mock(ScriptExecutor.class);
+            when(executor.execute(any(), eq("D01"), anyBoolean())).thenAnswer(invocation -> {
+                both.countDown();
+                assertTrue(both.await(5, TimeUnit.SECONDS));
+                ScriptResult result = new ScriptResult();
+                result.start = new Date(0);
+                result.end = new Date(browsers.indexOf(executor) == 0 ? 1000 : 4000);
+                return result;
+            });
+            when(executor.execute(any(), eq(ProjectUtil.TEMPLATE_LOGIN), anyBoolean())).thenReturn(new ScriptResult());
+            browsers.add(executor);
+        }
+        Iterator<ScriptExecutor> factory = browsers.iterator();
+        ProjectUtil projectUtil = mock(ProjectUtil.class);
+        when(projectUtil.getTemplate(anyString())).thenReturn("[]");
+        RunDispatcher dispatcher = new RunDispatcher(new BrowserPool(2, factory::next), projectUtil, new SessionCache());
+        NetworkMatrix matrix = new NetworkMatrix(dispatcher, projectUtil);
+
+        MatrixResult result = matrix.submit("D01", Arrays.asList("TLAN", "T3G"), new HashMap<>(), ProjectUtil.SOURCE_ADHOC)
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(new ArrayList<>(result.getResults().keySet()), Arrays.asList("TLAN", "T3G"));
+        assertEquals(result.getComparison().size(), 2);
+        assertEquals(result.getComparison().get(0).get("slowdown"), 1.0);
+        double slowdown = (Double) result.getComparison().get(1).get("slowdown");
+        assertTrue(slowdown == 4.0 || slowdown == 0.25);
+        assertSame(matrix.getLatest().get("D01"), result);
+        for (ScriptExecutor executor : browsers) {
+            verify(executor).setNetworkProfile(isNull());
+        }
+        dispatcher.shutdown();
+    }
+}
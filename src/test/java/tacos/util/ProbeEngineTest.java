@@ -0,0 +1,104 @@
+package tacos.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import tacos.model.Probe;
+import tacos.model.ProbeResult;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+public class ProbeEngineTest {
+    private HttpServer server;
+    private String base;
+    private final ProbeEngine engine = new ProbeEngine();
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            byte[] body = "{\"status\":\"UP\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterClass
+    public void tearDown() {
+        server.stop(0);
+        engine.shutdown();
+    }
+
+    private static Probe probe(String name, String url) {
+        Probe probe = new Probe();
+        probe.setName(name);
+        probe.setUrl(url);
+        return probe;
+    }
+
+    @Test
+    public void testAssertionsAndReuse() throws Exception {
+        Probe probe = probe("ok", base + "/ok");
+        probe.setExpectContains("UP");
+        probe.setExpectHeader("Content-Type: json");
+        ProbeResult first = engine.probe(probe).get(5, TimeUnit.SECONDS);
+        assertTrue(first.isOk(), first.getError());
+        assertEquals(first.getStatus(), 200);
+        assertEquals(first.getProtocol(), "http/1.1");
+        assertFalse(first.isReused());
+        assertTrue(first.getTotal() > 0);
+
+        assertEquals(first.getBytes(), 15);
+
+        // 不检查内容时读完丢弃，字节数相同
+        Probe plain = probe("plain", base + "/ok");
+        assertEquals(engine.probe(plain).get(5, TimeUnit.SECONDS).getBytes(), 15);
+
+        ProbeResult second = engine.probe(probe).get(5, TimeUnit.SECONDS);
+        assertTrue(second.isReused());
+        assertEquals(second.getConnect(), 0.0);
+
+        probe.setExpectContains("DOWN");
+        ProbeResult failed = engine.probe(probe).get(5, TimeUnit.SECONDS);
+        assertFalse(failed.isOk());
+        assertTrue(failed.getError().startsWith("body does not contain"));
+        assertSame(engine.getLatest().get("ok"), failed);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Probe probe = probe("slow", base + "/slow");
+        probe.setTimeout(200);
+        ProbeResult result = engine.probe(probe).get(5, TimeUnit.SECONDS);
+        assertFalse(result.isOk());
+        assertEquals(result.getError(), "timeout 200 ms");
+
+        Probe bad = probe("bad", "not a url");
+        assertFalse(engine.probe(bad).get(1, TimeUnit.SECONDS).isOk());
+    }
+
+    @Test
+    public void testLoadProbes() {
+        assertEquals(ProbeEngine.loadProbes().get(0).getName(), "home");
+    }
+}
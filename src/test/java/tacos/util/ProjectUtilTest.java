@@ -0,0 +1,50 @@
+package tacos.util;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.*;
+
+public class ProjectUtilTest {
+    private final ProjectUtil projectUtil = new ProjectUtil();
+
+    @AfterMethod
+    public void tearDown() {
+        projectUtil.destroy();
+        Util.setProperty("template.dir", "");
+    }
+
+    @Test
+    public void testSnapshot() {
+        projectUtil.ensureLoaded();
+        assertNotNull(projectUtil.getTemplate("D01"));
+        assertTrue(projectUtil.getTemplateCodes().contains("D01"));
+        assertFalse(projectUtil.getTemplateCodes().contains(ProjectUtil.TEMPLATE_LOGIN));
+        assertSame(projectUtil.getTemplateCodes(), projectUtil.getTemplateCodes());
+        assertFalse(ProjectUtil.getConfigBoolean("not.exist", false));
+        assertEquals(ProjectUtil.getConfigInt("not.exist", 3), 3);
+        assertEquals(ProjectUtil.getConfig("not.exist", "x"), "x");
+        Util.setProperty("not.in.db", "y");
+        assertEquals(ProjectUtil.getConfig("not.in.db", "x"), "y");
+    }
+
+    @Test
+    public void testWatchTemplateDir() throws Exception {
+        Path dir = Files.createTempDirectory("case");
+        Util.setProperty("template.dir", dir.toString());
+        projectUtil.init();
+        projectUtil.loadTemplate();
+        assertNull(projectUtil.getTemplate("X01"));
+
+        Files.writeString(dir.resolve("X01.json"), "[]");
+        long deadline = System.currentTimeMillis() + 20000;
+        while (projectUtil.getTemplate("X01") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(projectUtil.getTemplate("X01"), "[]");
+        assertTrue(projectUtil.getTemplateCodes().contains("X01"));
+    }
+}
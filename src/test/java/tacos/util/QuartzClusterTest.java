@@ -0,0 +1,173 @@
+package tacos.util;
+
+import org.quartz.*;
+import org.quartz.impl.SchedulerRepository;
+import org.quartz.impl.StdSchedulerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * 在同一个进程中启动多个集群节点，共享内嵌 H2 数据库，验证负载分担和宕机恢复
+ */
+public class QuartzClusterTest {
+    private static final Map<String, String> runs = new ConcurrentHashMap<>();
+    private static final Map<String, String> recovered = new ConcurrentHashMap<>();
+    private static CountDownLatch done;
+    private static CountDownLatch blocking;
+    private static CountDownLatch blocked;
+
+    private final List<Scheduler> nodes = new ArrayList<>();
+    private String url;
+
+    public static class RecordJob implements org.quartz.Job {
+        @Override
+        public void execute(JobExecutionContext context) throws JobExecutionException {
+            try {
+                runs.put(context.getTrigger().getKey().getName(), context.getScheduler().getSchedulerInstanceId());
+                Thread.sleep(300);
+            } catch (Exception e) {
+                throw new JobExecutionException(e);
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    public static class BlockingJob implements org.quartz.Job {
+        @Override
+        public void execute(JobExecutionContext context) throws JobExecutionException {
+            try {
+                String node = context.getScheduler().getSchedulerInstanceId();
+                if (context.isRecovering()) {
+                    recovered.put(context.getJobDetail().getKey().getName(), node);
+                    done.countDown();
+                    return;
+                }
+                // 首次执行的节点一直卡住，模拟执行中宕机
+                blocked.countDown();
+                blocking.await();
+            } catch (Exception e) {
+                throw new JobExecutionException(e);
+            }
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        runs.clear();
+        recovered.clear();
+        blocking = new CountDownLatch(1);
+        url = "jdbc:h2:mem:quartz" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url);
+        DatabasePopulatorUtils.execute(
+                new ResourceDatabasePopulator(new ClassPathResource("org/quartz/impl/jdbcjobstore/tables_h2.sql")),
+                dataSource);
+    }
+
+    @AfterMethod
+    public void tearDown() throws SchedulerException {
+        blocking.countDown();
+        for (Scheduler node : nodes) {
+            if (!node.isShutdown()) {
+                node.shutdown(false);
+            }
+        }
+        nodes.clear();
+    }
+
+    private Scheduler startNode(String instanceId) throws SchedulerException {
+        Properties props = new Properties();
+        props.setProperty("org.quartz.scheduler.instanceName", "TacoCluster");
+        props.setProperty("org.quartz.scheduler.instanceId", instanceId);
+        props.setProperty("org.quartz.scheduler.idleWaitTime", "500");
+        props.setProperty("org.quartz.threadPool.threadCount", "2");
+        props.setProperty("org.quartz.jobStore.class", "org.quartz.impl.jdbcjobstore.JobStoreTX");
+        props.setProperty("org.quartz.jobStore.driverDelegateClass", "org.quartz.impl.jdbcjobstore.StdJDBCDelegate");
+        // 数据源名称在 JVM 内全局共享，每个节点需要独立的名称
+        String ds = "qz_" + instanceId;
+        props.setProperty("org.quartz.jobStore.dataSource", ds);
+        props.setProperty("org.quartz.jobStore.isClustered", "true");
+        props.setProperty("org.quartz.jobStore.clusterCheckinInterval", "1000");
+        props.setProperty("org.quartz.jobStore.acquireTriggersWithinLock", "true");
+        props.setProperty("org.quartz.dataSource." + ds + ".provider", "hikaricp");
+        props.setProperty("org.quartz.dataSource." + ds + ".driver", "org.h2.Driver");
+        props.setProperty("org.quartz.dataSource." + ds + ".URL", url);
+        props.setProperty("org.quartz.dataSource." + ds + ".maxConnections", "4");
+        Scheduler scheduler = new StdSchedulerFactory(props).getScheduler();
+        // 同名 Scheduler 在 JVM 内会被复用，移除后下一个节点才能独立创建
+        SchedulerRepository.getInstance().remove(scheduler.getSchedulerName());
+        nodes.add(scheduler);
+        scheduler.start();
+        return scheduler;
+    }
+
+    @Test
+    public void testLoadIsShared() throws Exception {
+        int count = 20;
+        done = new CountDownLatch(count);
+        Scheduler node1 = startNode("node1");
+        startNode("node2");
+
+        JobDetail job = JobBuilder.newJob(RecordJob.class).withIdentity("record").storeDurably().build();
+        node1.addJob(job, false);
+        for (int i = 0; i < count; i++) {
+            node1.scheduleJob(TriggerBuilder.newTrigger().withIdentity("t" + i).forJob(job).startNow().build());
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(runs.size(), count);
+        assertEquals(new HashSet<>(runs.values()), new HashSet<>(Arrays.asList("node1", "node2")));
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        done = new CountDownLatch(1);
+        blocked = new CountDownLatch(1);
+        Scheduler node1 = startNode("node1");
+
+        JobDetail job = JobBuilder.newJob(BlockingJob.class).withIdentity("blocking").requestRecovery().build();
+        node1.scheduleJob(job, TriggerBuilder.newTrigger().withIdentity("once").startNow().build());
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // node1 停止心跳，node2 检测到后恢复执行中的任务
+        startNode("node2");
+        node1.shutdown(false);
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(recovered.get("blocking"), "node2");
+    }
+
+    @Test
+    public void testAffinityHandoff() throws Exception {
+        NodeAffinityListener listener = new NodeAffinityListener("chrome-a, chrome-b", 3);
+        assertTrue(listener.owns("chrome-a"));
+        assertTrue(listener.owns(null));
+        assertFalse(listener.owns("chrome-c"));
+        assertTrue(new NodeAffinityListener("", 3).owns("chrome-c"));
+
+        done = new CountDownLatch(1);
+        Scheduler node1 = startNode("node1");
+        node1.getListenerManager().addTriggerListener(new NodeAffinityListener("chrome-a", 2));
+
+        JobDetail job = JobBuilder.newJob(RecordJob.class).withIdentity("affinity")
+                .usingJobData(NodeAffinityListener.KEY_POOL, "chrome-b").build();
+        node1.scheduleJob(job, TriggerBuilder.newTrigger().withIdentity("cron").startNow().build());
+
+        // 集群中没有节点拥有 chrome-b，转交两次后就地执行
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(runs.size(), 1);
+        assertTrue(runs.keySet().iterator().next().startsWith("cron-node1-"));
+    }
+}
@@ -0,0 +1,91 @@
+package tacos.util;
+
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class QueryCacheTest {
+
+    @Test
+    public void testTables() {
+        assertEquals(QueryCache.tables("select a.x from ete_result a join `amd`.`ete_config` c on a.id = c.id"),
+                new HashSet<>(Arrays.asList("ete_result", "ete_config")));
+        assertEquals(QueryCache.tables("insert into ETE_RESULT (id) values (?)"), Collections.singleton("ete_result"));
+        assertEquals(QueryCache.tables("update ete_config set value = ?"), Collections.singleton("ete_config"));
+        assertEquals(QueryCache.tables("delete from ete_schedule"), Collections.singleton("ete_schedule"));
+    }
+
+    @Test
+    public void testTtlAndArgs() throws Exception {
+        QueryCache cache = new QueryCache(10);
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(cache.get("select ?", new Object[]{1}, 200, loads::incrementAndGet), Integer.valueOf(1));
+        assertEquals(cache.get("select ?", new Object[]{1}, 200, loads::incrementAndGet), Integer.valueOf(1));
+        assertEquals(cache.get("select ?", new Object[]{2}, 200, loads::incrementAndGet), Integer.valueOf(2));
+        assertEquals(cache.getHits(), 1);
+        assertEquals(cache.getMisses(), 2);
+
+        Thread.sleep(250);
+        assertEquals(cache.get("select ?", new Object[]{1}, 200, loads::incrementAndGet), Integer.valueOf(3));
+    }
+
+    @Test
+    public void testLru() {
+        QueryCache cache = new QueryCache(2);
+        cache.get("select 1", null, 60000, () -> 1);
+        cache.get("select 2", null, 60000, () -> 2);
+        cache.get("select 1", null, 60000, () -> 1);
+        cache.get("select 3", null, 60000, () -> 3);
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictions(), 1);
+        // select 2 最久未使用，已淘汰
+        assertEquals(cache.get("select 2", null, 60000, () -> 22), Integer.valueOf(22));
+    }
+
+    @Test
+    public void testInvalidate() {
+        QueryCache cache = new QueryCache(10);
+        cache.get("select value from ete_config where name = ?", new Object[]{"a"}, 60000, () -> "1");
+        cache.get("select count(1) from ete_result", null, 60000, () -> 5);
+        assertEquals(cache.invalidate(QueryCache.tables("update ete_config set value = '2'")), 1);
+        assertEquals(cache.get("select value from ete_config where name = ?", new Object[]{"a"}, 60000, () -> "2"), "2");
+        assertEquals(cache.get("select count(1) from ete_result", null, 60000, () -> 6), Integer.valueOf(5));
+    }
+
+    @Test
+    public void testStampede() throws Exception {
+        QueryCache cache = new QueryCache(10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return cache.get("select slow", null, 60000, () -> {
+                    Thread.sleep(200);
+                    return loads.incrementAndGet();
+                });
+            }));
+        }
+        start.countDown();
+        for (Future<Integer> future : futures) {
+            assertEquals(future.get(), Integer.valueOf(1));
+        }
+        pool.shutdown();
+        assertEquals(loads.get(), 1);
+    }
+
+    @Test
+    public void testErrorNotCached() {
+        QueryCache cache = new QueryCache(10);
+        assertThrows(IllegalStateException.class, () -> cache.get("select 1", null, 60000, () -> {
+            throw new IllegalStateException("down");
+        }));
+        assertEquals(cache.get("select 1", null, 60000, () -> 1), Integer.valueOf(1));
+    }
+}
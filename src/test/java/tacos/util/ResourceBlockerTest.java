@@ -0,0 +1,53 @@
+package tacos.util;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import tacos.model.BlockProfile;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public class ResourceBlockerTest {
+
+    @AfterMethod
+    public void tearDown() {
+        Util.setProperty("block.profile", "none");
+        Util.setProperty("block.ab", "false");
+    }
+
+    @Test
+    public void testProfile() {
+        Util.setProperty("block.t1.urls", "*analytics*, *ads*");
+        Util.setProperty("block.t1.types", "Font,Unknown");
+        Util.setProperty("block.t1.stubs", "ga,bad name");
+        BlockProfile profile = ResourceBlocker.getProfile("t1");
+        List<String> patterns = ResourceBlocker.patterns(profile);
+        assertEquals(patterns.subList(0, 2), Arrays.asList("*analytics*", "*ads*"));
+        assertTrue(patterns.contains("*.woff2"));
+        assertTrue(patterns.contains("*.woff2?*"));
+        assertEquals(ResourceBlocker.stubScript(profile), "window.ga=function(){};");
+        assertTrue(ResourceBlocker.getProfile(ResourceBlocker.NONE).isEmpty());
+    }
+
+    @Test
+    public void testSelectAndReport() {
+        assertEquals(ResourceBlocker.select("T1"), ResourceBlocker.NONE);
+        Util.setProperty("block.profile", "t1");
+        Util.setProperty("block.ab", "true");
+        assertEquals(ResourceBlocker.select("T1"), "t1");
+        assertEquals(ResourceBlocker.select("T1"), ResourceBlocker.NONE);
+        assertEquals(ResourceBlocker.select("T1"), "t1");
+
+        ResourceBlocker.record("T1", "t1", 1000);
+        ResourceBlocker.record("T1", ResourceBlocker.NONE, 2000);
+        ResourceBlocker.record("T2", ResourceBlocker.NONE, 2000);
+        List<Map<String, Object>> report = ResourceBlocker.report();
+        assertEquals(report.size(), 2);
+        assertEquals(report.get(0).get("block"), ResourceBlocker.NONE);
+        assertEquals(report.get(1).get("block"), "t1");
+        assertTrue((Double) report.get(1).get("saving") > 0.4);
+    }
+}
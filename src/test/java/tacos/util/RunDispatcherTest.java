@@ -0,0 +1,50 @@
+package tacos.util;
+
+import org.testng.annotations.Test;
+import tacos.model.ScriptResult;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class RunDispatcherTest {
+
+    @Test
+    public void testPriorityAndFairShare() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch gate = new CountDownLatch(1);
+        ScriptExecutor executor = mock(ScriptExecutor.class);
+        when(executor.execute(any(), anyString(), anyBoolean())).thenAnswer(invocation -> {
+            String tag = invocation.getArgument(1);
+            if (!ProjectUtil.TEMPLATE_LOGIN.equals(tag)) {
+                order.add(tag);
+                gate.await(5, TimeUnit.SECONDS);
+            }
+            return new ScriptResult();
+        });
+        ProjectUtil projectUtil = mock(ProjectUtil.class);
+        when(projectUtil.getTemplate(anyString())).thenReturn("[]");
+        RunDispatcher dispatcher = new RunDispatcher(new BrowserPool(1, () -> executor), projectUtil, new SessionCache());
+
+        // 第一个运行占住唯一的浏览器，其余排队
+        List<CompletableFuture<ScriptResult>> futures = new ArrayList<>();
+        futures.add(dispatcher.submit("A0", "[]", new HashMap<>(), ProjectUtil.SOURCE_SCHEDULE));
+        for (int i = 0; i < 3; i++) {
+            futures.add(dispatcher.submit("A", "[]", new HashMap<>(), ProjectUtil.SOURCE_SCHEDULE));
+        }
+        futures.add(dispatcher.submit("B", "[]", new HashMap<>(), ProjectUtil.SOURCE_SCHEDULE));
+        futures.add(dispatcher.submit("X", "[]", new HashMap<>(), ProjectUtil.SOURCE_ADHOC));
+        assertEquals(dispatcher.getQueued("adhoc"), 1);
+        assertEquals(dispatcher.getQueued("schedule"), 4);
+
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(order, Arrays.asList("A0", "X", "A", "B", "A", "A"));
+        dispatcher.shutdown();
+    }
+}
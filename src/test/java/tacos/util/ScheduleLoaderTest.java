@@ -0,0 +1,96 @@
+package tacos.util;
+
+import org.quartz.*;
+import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import tacos.model.Schedule;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.testng.Assert.*;
+
+public class ScheduleLoaderTest {
+    private Scheduler scheduler;
+    private ScheduleLoader loader;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("org.quartz.scheduler.instanceName", "ScheduleLoaderTest");
+        props.setProperty("org.quartz.threadPool.threadCount", "1");
+        props.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        scheduler = new StdSchedulerFactory(props).getScheduler();
+        Util.setProperty("schedule.spread", "false");
+        loader = new ScheduleLoader();
+        Field field = loader.getClass().getDeclaredField("scheduler");
+        field.setAccessible(true);
+        field.set(loader, scheduler);
+    }
+
+    @AfterMethod
+    public void tearDown() throws SchedulerException {
+        scheduler.shutdown();
+    }
+
+    private Schedule schedule(String name, String cron, long version) {
+        Schedule schedule = new Schedule();
+        schedule.setName(name);
+        schedule.setCron(cron);
+        schedule.setCd("D01");
+        schedule.setVersion(version);
+        return schedule;
+    }
+
+    @Test
+    public void testApplyDiff() throws SchedulerException {
+        List<Schedule> list = new ArrayList<>();
+        list.add(schedule("a", "0 0 * * * ?", 1));
+        list.add(schedule("b", "0 30 * * * ?", 1));
+        assertEquals(loader.apply(list), new int[]{2, 0, 0});
+
+        // 版本不变不做任何处理
+        assertEquals(loader.apply(list), new int[]{0, 0, 0});
+
+        // 修改 a，删除 b，新增 c
+        list.set(0, schedule("a", "0 15 * * * ?", 2));
+        list.remove(1);
+        list.add(schedule("c", "0 45 * * * ?", 1));
+        assertEquals(loader.apply(list), new int[]{1, 1, 1});
+
+        CronTrigger trigger = (CronTrigger) scheduler.getTrigger(new TriggerKey("a", ScheduleLoader.GROUP));
+        assertEquals(trigger.getCronExpression(), "0 15 * * * ?");
+        assertEquals(scheduler.getJobKeys(GroupMatcher.jobGroupEquals(ScheduleLoader.GROUP)).size(), 2);
+    }
+
+    @Test
+    public void testDisabledAndInvalid() throws SchedulerException {
+        List<Schedule> list = new ArrayList<>();
+        list.add(schedule("a", "0 0 * * * ?", 1));
+        list.add(schedule("bad", "not a cron", 1));
+        assertEquals(loader.apply(list), new int[]{1, 0, 0});
+
+        list.get(0).setEnabled(false);
+        assertEquals(loader.apply(list), new int[]{0, 0, 1});
+        assertNull(scheduler.getJobDetail(new JobKey("a", ScheduleLoader.GROUP)));
+    }
+
+    @Test
+    public void testSpreadSameCron() throws SchedulerException {
+        Util.setProperty("schedule.spread", "true");
+        List<Schedule> list = new ArrayList<>();
+        list.add(schedule("a", "0 0 */1 * * ?", 1));
+        list.add(schedule("b", "0 0 */1 * * ?", 1));
+        assertEquals(loader.apply(list), new int[]{2, 0, 0});
+
+        // 新增同 cron 的计划后，b 的触发时刻从 30 分左右提前到 20 分左右，需要重新分配
+        list.add(schedule("c", "0 0 */1 * * ?", 1));
+        assertEquals(loader.apply(list), new int[]{1, 1, 0});
+        assertTrue(loader.getProfile().startsWith("最大并发: 1"));
+    }
+}
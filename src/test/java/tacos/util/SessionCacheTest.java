@@ -0,0 +1,70 @@
+package tacos.util;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import tacos.model.BrowserSession;
+import tacos.model.ScriptResult;
+import tacos.model.ScriptStep;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class SessionCacheTest {
+    private final List<ScriptStep> loginSteps = Collections.singletonList(new ScriptStep());
+
+    @BeforeMethod
+    public void setUp() {
+        Util.setProperty("session.enabled", "true");
+        Util.setProperty("session.file", "");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        Util.setProperty("session.enabled", "false");
+    }
+
+    private static ScriptExecutor browser() {
+        ScriptExecutor executor = mock(ScriptExecutor.class);
+        doCallRealMethod().when(executor).setSessionKey(any());
+        when(executor.getSessionKey()).thenCallRealMethod();
+        when(executor.execute(any(), anyString(), anyBoolean())).thenReturn(new ScriptResult());
+        when(executor.exportSession()).thenReturn(new BrowserSession());
+        return executor;
+    }
+
+    @Test
+    public void testReuseAndRestore() {
+        SessionCache cache = new SessionCache();
+        ScriptExecutor first = browser();
+        assertEquals(cache.login(first, loginSteps), SessionCache.MODE_LOGIN);
+        assertEquals(cache.login(first, loginSteps), SessionCache.MODE_REUSED);
+        verify(first, times(1)).execute(any(), anyString(), anyBoolean());
+
+        ScriptExecutor second = browser();
+        when(second.restoreSession(any(), any(), any(), any())).thenReturn(true);
+        assertEquals(cache.login(second, loginSteps), SessionCache.MODE_RESTORED);
+        verify(second, never()).execute(any(), anyString(), anyBoolean());
+
+        // 探测失败时重新登录
+        ScriptExecutor third = browser();
+        when(third.restoreSession(any(), any(), any(), any())).thenReturn(false);
+        assertEquals(cache.login(third, loginSteps), SessionCache.MODE_LOGIN);
+        verify(third, times(1)).execute(any(), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testInvalidate() {
+        SessionCache cache = new SessionCache();
+        ScriptExecutor executor = browser();
+        cache.login(executor, loginSteps);
+        assertEquals(cache.size(), 1);
+        cache.invalidate(executor);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.login(executor, loginSteps), SessionCache.MODE_LOGIN);
+    }
+}
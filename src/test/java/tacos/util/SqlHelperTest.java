@@ -0,0 +1,76 @@
+package tacos.util;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.*;
+
+public class SqlHelperTest {
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:sqlhelper;DB_CLOSE_DELAY=-1", "sa", "");
+        Constructor<SqlHelper> constructor = SqlHelper.class.getDeclaredConstructor(JdbcTemplate.class);
+        constructor.setAccessible(true);
+        constructor.newInstance(new JdbcTemplate(dataSource));
+
+        SqlHelper.execute("create table t_value (id int primary key, name varchar(20), amount double, total bigint)");
+        SqlHelper.update("insert into t_value values (?, ?, ?, ?)", 1, "a", 1.5, 10000000000L);
+        SqlHelper.update("insert into t_value values (?, ?, ?, ?)", 2, null, null, null);
+    }
+
+    @Test
+    public void testScalar() {
+        assertEquals(SqlHelper.queryForInt("select count(1) from t_value"), Integer.valueOf(2));
+        assertEquals(SqlHelper.queryForString("select name from t_value where id = ?", 1), "a");
+        assertEquals(SqlHelper.queryForLong("select total from t_value where id = ?", -1, 1), 10000000000L);
+        assertEquals(SqlHelper.queryForDouble("select amount from t_value where id = ?", 0, 1), 1.5);
+    }
+
+    @Test
+    public void testNullAndEmpty() {
+        assertNull(SqlHelper.queryForInt("select total from t_value where id = ?", 2));
+        assertNull(SqlHelper.queryForString("select name from t_value where id = ?", 3));
+        assertEquals(SqlHelper.queryForLong("select total from t_value where id = ?", -1, 2), -1);
+        assertEquals(SqlHelper.queryForDouble("select amount from t_value where id = ?", 9.5, 3), 9.5);
+    }
+
+    @Test
+    public void testRow() {
+        assertEquals(SqlHelper.queryForObject("select id, name from t_value order by id",
+                (rs, rowNum) -> rs.getString("name")), "a");
+        assertNull(SqlHelper.queryForObject("select id from t_value where id = ?", (rs, rowNum) -> rs.getInt(1), 3));
+        assertEquals(SqlHelper.query("select id from t_value where id > ?", (rs, rowNum) -> rs.getInt(1), 0).size(), 2);
+    }
+
+    @Test
+    public void testBatchUpdate() {
+        SqlHelper.execute("create table t_batch (id int primary key, name varchar(20))");
+        long count = SqlHelper.batchUpdate("insert into t_batch values (?, ?)",
+                IntStream.range(0, 2500).mapToObj(i -> new Object[]{i, "n" + i}));
+        assertEquals(count, 2500);
+        assertEquals(SqlHelper.queryForLong("select count(1) from t_batch", 0), 2500);
+        assertEquals(SqlHelper.queryForString("select name from t_batch where id = ?", 2499), "n2499");
+    }
+
+    @Test
+    public void testAppendRow() {
+        StringBuilder line = new StringBuilder();
+        SqlHelper.appendRow(line, new Object[]{1, null, "a\tb\\c", true});
+        assertEquals(line.toString(), "1\t\\N\ta\\tb\\\\c\t1\n");
+    }
+
+    @Test
+    public void testLoadDataIdentifier() {
+        expectThrows(IllegalArgumentException.class, () -> SqlHelper.loadData("t_value; drop table t_value",
+                new String[]{"id"}, Collections.emptyIterator()));
+        expectThrows(IllegalArgumentException.class, () -> SqlHelper.loadData("t_value",
+                new String[]{"id", "name) set id = 0 --"}, Collections.emptyIterator()));
+    }
+}
@@ -0,0 +1,82 @@
+package tacos.util;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import tacos.model.ScriptResult;
+import tacos.model.SuiteResult;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class SuiteRunnerTest {
+
+    @AfterMethod
+    public void tearDown() {
+        Util.setProperty("suite.daily", "");
+        Util.setProperty("suite.daily.stopOn", "*");
+    }
+
+    private static SuiteRunner runner(ScriptExecutor executor) {
+        ProjectUtil projectUtil = mock(ProjectUtil.class);
+        when(projectUtil.getTemplate(anyString())).thenReturn("[]");
+        return new SuiteRunner(new RunDispatcher(new BrowserPool(1, () -> executor), projectUtil, new SessionCache()), projectUtil);
+    }
+
+    private static ScriptExecutor browser(List<String> order, String failing) {
+        ScriptExecutor executor = mock(ScriptExecutor.class);
+        when(executor.execute(any(), anyString(), anyBoolean())).thenAnswer(invocation -> {
+            String tag = invocation.getArgument(1);
+            order.add(tag);
+            ScriptResult result = new ScriptResult();
+            if (tag.equals(failing)) {
+                result.errorMessage = "element not found";
+            }
+            return result;
+        });
+        return executor;
+    }
+
+    @Test
+    public void testStopOnError() throws Exception {
+        Util.setProperty("suite.daily", "LGN, D01, D02, S06");
+        Util.setProperty("suite.daily.stopOn", " D02 ");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        SuiteRunner runner = runner(browser(order, "D02"));
+
+        SuiteResult suite = runner.submit("daily", new HashMap<>(), ProjectUtil.SOURCE_ADHOC).get(10, TimeUnit.SECONDS);
+        assertEquals(order, Arrays.asList(ProjectUtil.TEMPLATE_LOGIN, "D01", "D02"));
+        assertEquals(new ArrayList<>(suite.getResults().keySet()), Arrays.asList("LGN", "D01", "D02"));
+        assertEquals(suite.getStoppedBy(), "D02");
+        assertEquals(suite.getSkipped(), Collections.singletonList("S06"));
+        assertTrue(suite.getErrorMessage().startsWith("D02: "));
+    }
+
+    @Test
+    public void testContinueOnError() throws Exception {
+        Util.setProperty("suite.daily", "D01,D02,S06");
+        Util.setProperty("suite.daily.stopOn", "S06");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        SuiteRunner runner = runner(browser(order, "D01"));
+
+        SuiteResult suite = runner.submit("daily", new HashMap<>(), ProjectUtil.SOURCE_SCHEDULE).get(10, TimeUnit.SECONDS);
+        assertEquals(order, Arrays.asList("D01", "D02", "S06"));
+        assertNull(suite.getStoppedBy());
+        assertTrue(suite.getSkipped().isEmpty());
+        assertFalse(isEmptyResult(suite.getResults().get("D01")));
+        assertTrue(isEmptyResult(suite.getResults().get("D02")));
+    }
+
+    @Test
+    public void testUndefinedSuite() {
+        SuiteRunner runner = runner(mock(ScriptExecutor.class));
+        expectThrows(IllegalArgumentException.class, () -> runner.submit("missing", new HashMap<>(), ProjectUtil.SOURCE_ADHOC));
+    }
+
+    private static boolean isEmptyResult(ScriptResult result) {
+        return Util.isEmpty(result.errorMessage);
+    }
+}
@@ -0,0 +1,108 @@
+package tacos.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+public class TracerTest {
+    private File dir;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("trace").toFile();
+        Util.setProperty("trace.enabled", "true");
+        Util.setProperty("trace.dir", dir.getAbsolutePath());
+        Util.setProperty("trace.slowThreshold", "60000");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        Util.setProperty("trace.enabled", "false");
+    }
+
+    private List<String> readLines(int expected) throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50 && lines.size() < expected; i++) {
+            Thread.sleep(100);
+            lines.clear();
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    lines.addAll(Files.readAllLines(file.toPath()));
+                }
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        Util.setProperty("trace.sampleRate", "1");
+        Tracer.Span run = Tracer.startRun("run D01", System.currentTimeMillis()).attr("cd", "D01");
+        try (Tracer.Span step = Tracer.start("step open")) {
+            Tracer.start("wait").error("timeout").end();
+        }
+        Thread thread = new Thread(Tracer.wrap(() -> Tracer.start("async").end()));
+        thread.start();
+        thread.join();
+        run.end();
+        assertFalse(Tracer.current().isRecording());
+
+        List<String> lines = readLines(1);
+        assertEquals(lines.size(), 1);
+        JsonArray spans = JsonParser.parseString(lines.get(0)).getAsJsonObject()
+                .getAsJsonArray("resourceSpans").get(0).getAsJsonObject()
+                .getAsJsonArray("scopeSpans").get(0).getAsJsonObject()
+                .getAsJsonArray("spans");
+        assertEquals(spans.size(), 4);
+
+        Map<String, JsonObject> byName = new HashMap<>();
+        for (int i = 0; i < spans.size(); i++) {
+            JsonObject span = spans.get(i).getAsJsonObject();
+            byName.put(span.get("name").getAsString(), span);
+        }
+        JsonObject root = byName.get("run D01");
+        JsonObject step = byName.get("step open");
+        JsonObject wait = byName.get("wait");
+        assertNotNull(root);
+        assertFalse(root.has("parentSpanId"));
+        assertEquals(step.get("parentSpanId").getAsString(), root.get("spanId").getAsString());
+        assertEquals(wait.get("parentSpanId").getAsString(), step.get("spanId").getAsString());
+        assertEquals(byName.get("async").get("parentSpanId").getAsString(), root.get("spanId").getAsString());
+        assertEquals(wait.getAsJsonObject("status").get("code").getAsInt(), 2);
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        Util.setProperty("trace.sampleRate", "0");
+        Tracer.startRun("run D02", System.currentTimeMillis()).end();
+        // 出错的运行即使未被抽中也保留
+        Tracer.startRun("run D03", System.currentTimeMillis()).error("failed").end();
+
+        List<String> lines = readLines(1);
+        assertEquals(lines.size(), 1);
+        assertTrue(lines.get(0).contains("run D03"));
+    }
+
+    @Test
+    public void testDisabled() {
+        Util.setProperty("trace.enabled", "false");
+        Tracer.Span span = Tracer.startRun("run D01", System.currentTimeMillis());
+        assertFalse(span.isRecording());
+        assertFalse(Tracer.start("step").isRecording());
+        span.end();
+    }
+}
@@ -0,0 +1,75 @@
+package tacos.util;
+
+import org.quartz.CronExpression;
+import org.testng.annotations.Test;
+
+import java.text.ParseException;
+import java.util.*;
+
+import static org.testng.Assert.*;
+import static tacos.util.TriggerSpreader.*;
+
+public class TriggerSpreaderTest {
+
+    @Test
+    public void testShift() {
+        assertEquals(window("0 0 */1 * * ?"), 3600);
+        assertEquals(window("0 */5 * * * ?"), 300);
+        assertEquals(window("0/10 * * * * ?"), 0);
+        assertEquals(shift("0 0 */1 * * ?", 754), "34 12 */1 * * ?");
+        assertEquals(shift("0 50 2 * * ?", 1200), "0 10 2 * * ?");
+        assertEquals(shift("0 */5 * * * ?", 130), "10 2/5 * * * ?");
+        assertEquals(shift("0 * * * * ?", 15), "15 * * * * ?");
+        assertEquals(shift("0/10 * * * * ?", 15), "0/10 * * * * ?");
+        assertEquals(shift("0 0 */1 * * ?", 3600), "0 0 */1 * * ?");
+    }
+
+    @Test
+    public void testJitterIsDeterministic() {
+        assertEquals(jitter("D01", 30), jitter("D01", 30));
+        assertTrue(jitter("D01", 30) < 30);
+        assertEquals(jitter("D01", 0), 0);
+    }
+
+    @Test
+    public void testPlanSpreadsSameCron() {
+        Map<String, String> crons = new HashMap<>();
+        for (int i = 0; i < 12; i++) {
+            crons.put("job" + i, "0 0 */1 * * ?");
+        }
+        crons.put("other", "0/10 * * * * ?");
+
+        Map<String, String> plan = plan(crons, 30);
+        assertEquals(plan.get("other"), "0/10 * * * * ?");
+        assertEquals(plan, plan(crons, 30));
+
+        Set<String> minutes = new HashSet<>();
+        for (int i = 0; i < 12; i++) {
+            String[] fields = plan.get("job" + i).split(" ");
+            assertEquals(fields[2], "*/1");
+            minutes.add(fields[1]);
+        }
+        // 12 个计划每 5 分钟一个，互不相同
+        assertEquals(minutes.size(), 12);
+    }
+
+    @Test
+    public void testProfile() throws ParseException {
+        Date from = new CronExpression("0 0 */1 * * ?").getNextValidTimeAfter(new Date());
+        List<String> same = Collections.nCopies(12, "0 0 */1 * * ?");
+        int[] before = profile(same, Util.MS_MINUTE * 2, from, Util.MS_HOUR, Util.MS_MINUTE);
+        assertEquals(before[0], 12);
+        assertEquals(before[1], 12);
+        assertEquals(before[2], 0);
+
+        Map<String, String> crons = new HashMap<>();
+        for (int i = 0; i < 12; i++) {
+            crons.put("job" + i, "0 0 */1 * * ?");
+        }
+        int[] after = profile(plan(crons, 0).values(), Util.MS_MINUTE * 2, from, Util.MS_HOUR, Util.MS_MINUTE);
+        for (int count : after) {
+            assertTrue(count <= 1);
+        }
+        assertTrue(report(after, Util.MS_MINUTE).startsWith("最大并发: 1"));
+    }
+}
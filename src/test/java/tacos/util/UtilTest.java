@@ -239,6 +239,12 @@ public class UtilTest {
         assertEquals("f", right("abc=def", 1));
     }
 
+    @Test
+    public void testSplitTrim() {
+        assertEquals(splitTrim("D01, D02 ,, ", ","), new String[]{"D01", "D02"});
+        assertEquals(splitTrim(null, ",").length, 0);
+    }
+
     @Test
     public void testInList() {
         assertFalse(inList(new String[]{"abc", "def", "123"}, null));